@@ -0,0 +1,20 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar: runs JMH with the given options, adding the GC profiler
+ * (allocation rate per operation) unless another profiler is requested.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+		if (!arguments.contains("-prof")) {
+			arguments.add("-prof");
+			arguments.add("gc");
+		}
+		org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,58 @@
+package fr.istic.ia.tp1;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fixed positions used by the benchmarks, for each board size and game phase.
+ * The middlegame and endgame positions are reached by random games with a fixed seed,
+ * so they are the same from one run to the next.
+ */
+final class BenchmarkPositions {
+	/** Game phase of the initial position */
+	static final String OPENING = "opening";
+
+	/** Game phase where a third of the pawns have been taken */
+	static final String MIDDLEGAME = "middlegame";
+
+	/** Game phase where three quarters of the pawns have been taken */
+	static final String ENDGAME = "endgame";
+
+	private BenchmarkPositions() {
+	}
+
+	/**
+	 * Get the position of a game phase
+	 * @param boardSize Size of the checker board
+	 * @param phase One of {@link #OPENING}, {@link #MIDDLEGAME} or {@link #ENDGAME}
+	 * @return A running game (not finished, with at least two possible moves), with an empty history
+	 */
+	static EnglishDraughts position(int boardSize, String phase) {
+		EnglishDraughts initial = new EnglishDraughts(boardSize);
+		int nbPawns = initial.board.nbWhitePawns() + initial.board.nbBlackPawns();
+		int targetPawns;
+		switch (phase) {
+		case OPENING:
+			return initial;
+		case MIDDLEGAME:
+			targetPawns = nbPawns * 2 / 3;
+			break;
+		case ENDGAME:
+			targetPawns = nbPawns / 4;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown game phase: " + phase);
+		}
+		// Play random games until one reaches the number of pawns while still running (with a choice of moves)
+		Random random = new Random(boardSize);
+		while (true) {
+			EnglishDraughts game = initial.clone();
+			while (game.winner() == null) {
+				List<Game.Move> moves = game.possibleMoves();
+				if (game.board.nbWhitePawns() + game.board.nbBlackPawns() <= targetPawns && moves.size() > 1)
+					return game.clone();
+				game.play(moves.get(random.nextInt(moves.size())));
+			}
+		}
+	}
+}
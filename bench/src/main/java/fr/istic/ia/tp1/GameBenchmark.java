@@ -0,0 +1,95 @@
+package fr.istic.ia.tp1;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.istic.ia.tp1.Game.PlayerId;
+
+/**
+ * Benchmarks of the {@link EnglishDraughts} and {@link CheckerBoard} operations,
+ * on fixed positions of each game phase (see {@link BenchmarkPositions}).
+ * Each benchmark leaves the position unchanged, so the same position is measured by all the invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBenchmark {
+	@Param({ "6", "8", "10", "12" })
+	int boardSize;
+
+	@Param({ BenchmarkPositions.OPENING, BenchmarkPositions.MIDDLEGAME, BenchmarkPositions.ENDGAME })
+	String phase;
+
+	/** The benchmarked position */
+	EnglishDraughts game;
+
+	/** The first possible move of the position */
+	Game.Move move;
+
+	/** The buffer of {@link #generateMoves()} */
+	MoveBuffer moves;
+
+	@Setup
+	public void setup() {
+		game = BenchmarkPositions.position(boardSize, phase);
+		move = game.possibleMoves().get(0);
+		moves = new MoveBuffer();
+	}
+
+	/** Move generation: the move cache is cleared so that the moves are generated by each call */
+	@Benchmark
+	public List<Game.Move> possibleMoves() {
+		game.clearMoveCache();
+		return game.possibleMoves();
+	}
+
+	/** Move generation as codes, without allocation */
+	@Benchmark
+	public int generateMoves() {
+		game.clearMoveCache();
+		return game.generateMoves(moves);
+	}
+
+	/** Checked play (including the generation of the valid moves), and unplay back to the position */
+	@Benchmark
+	public int play() {
+		game.play(move);
+		game.unplay();
+		return game.nbTurn;
+	}
+
+	/** Trusted play, as used by the search, and unplay back to the position */
+	@Benchmark
+	public int playUnchecked() {
+		game.playUnchecked(move);
+		game.unplay();
+		return game.nbTurn;
+	}
+
+	@Benchmark
+	public Game cloneGame() {
+		return game.clone();
+	}
+
+	/** End of game detection: the move cache is cleared so that it is not used */
+	@Benchmark
+	public PlayerId winner() {
+		game.clearMoveCache();
+		return game.winner();
+	}
+}
@@ -0,0 +1,60 @@
+package fr.istic.ia.tp1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.istic.ia.tp1.Game.PlayerId;
+
+/**
+ * Benchmarks of the {@link MonteCarloTreeSearch} hot paths, from the initial position.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+	@Param({ "6", "8", "10", "12" })
+	int boardSize;
+
+	/** The initial position */
+	EnglishDraughts game;
+
+	/** The search, restarted from the initial position at each iteration (the tree grows during an iteration) */
+	MonteCarloTreeSearch mcts;
+
+	@Setup
+	public void setup() {
+		game = new EnglishDraughts(boardSize);
+	}
+
+	@Setup(Level.Iteration)
+	public void newSearch() {
+		mcts = new MonteCarloTreeSearch(game);
+	}
+
+	/** A random game from the initial position (including the copy of the position) */
+	@Benchmark
+	public PlayerId playRandomlyToEnd() {
+		return MonteCarloTreeSearch.playRandomlyToEnd(game.clone());
+	}
+
+	/** One MCTS step: selection, expansion, rollout and backpropagation */
+	@Benchmark
+	public boolean evaluateTreeOnce() {
+		return mcts.evaluateTreeOnce();
+	}
+}
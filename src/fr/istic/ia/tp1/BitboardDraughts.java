@@ -0,0 +1,663 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import fr.istic.ia.tp1.EnglishDraughts.DraughtsMove;
+
+/**
+ * Implementation of the English Draughts game on the standard 8x8 board, using bitboards.
+ * The position is stored as three 32-bit masks (whites, blacks and kings): bit <code>i</code>
+ * of a mask corresponds to tile number <code>i+1</code> (Manouri notation, as in {@link CheckerBoard}).
+ *
+ * Moves are generated with shift-and-mask operations, and are listed in the same order as
+ * {@link EnglishDraughts#possibleMoves()}, so both implementations can be swapped in MCTS.
+ * Moves use the same packed encoding ({@link EnglishDraughts.DraughtsMove}), so moves of both implementations compare equal.
+ *
+ */
+public class BitboardDraughts extends Game {
+	/** Tiles of the rows having their first playable tile in the second column (tiles 1-4, 9-12, 17-20, 25-28) */
+	static final int EVEN_ROWS = 0x0F0F0F0F;
+
+	/** Tiles of the rows having their first playable tile in the first column (tiles 5-8, 13-16, 21-24, 29-32) */
+	static final int ODD_ROWS = 0xF0F0F0F0;
+
+	/** Tiles of the top row (blacks side) */
+	static final int TOP_ROW = 0x0000000F;
+
+	/** Tiles of the bottom row (whites side) */
+	static final int BOTTOM_ROW = 0xF0000000;
+
+	/** Tiles of the left column */
+	static final int LEFT_COLUMN = 0x10101010;
+
+	/** Tiles of the right column */
+	static final int RIGHT_COLUMN = 0x08080808;
+
+	/** Direction IDs, used to index the shift functions (same IDs as the {@link CheckerBoard} directions) */
+	static final int UP_LEFT = CheckerBoard.UP_LEFT;
+	static final int UP_RIGHT = CheckerBoard.UP_RIGHT;
+	static final int DOWN_LEFT = CheckerBoard.DOWN_LEFT;
+	static final int DOWN_RIGHT = CheckerBoard.DOWN_RIGHT;
+
+	/**
+	 * Directions explored for each player, in the order used by {@link EnglishDraughts}.
+	 * Checkers only use the first two (forward) directions, kings use all four.
+	 */
+	static final int[][] DIRECTIONS = {
+			{ UP_LEFT, UP_RIGHT, DOWN_LEFT, DOWN_RIGHT }, // whites
+			{ DOWN_LEFT, DOWN_RIGHT, UP_LEFT, UP_RIGHT }  // blacks
+	};
+
+	/** Maximum number of jumps of a multiple capture: each jump takes one of the 12 adversary pawns */
+	static final int MAX_JUMPS = 12;
+
+	/** Flag of {@link #captureNext}: the capture path of this level has been extended by at least one jump */
+	static final int CAPTURE_EXTENDED = 1 << 8;
+
+	/** Mask of the white pawns (checkers and kings) */
+	int whites;
+
+	/** Mask of the black pawns (checkers and kings) */
+	int blacks;
+
+	/** Mask of the kings (black and white) */
+	int kings;
+
+	/**
+	 * The {@link PlayerId} of the current player
+	 * {@link PlayerId#ONE} corresponds to the whites
+	 * {@link PlayerId#TWO} corresponds to the blacks
+	 */
+	PlayerId playerId;
+
+	/**
+	 * The current game turn
+	 */
+	int nbTurn;
+
+	/**
+	 * The number of consecutive moves played only with kings and without capture
+	 * (used to decide equality)
+	 */
+	int nbKingMovesWithoutCapture;
+
+	/**
+	 * The Zobrist key of the pawns placement, updated by each move (see {@link #hashKey()})
+	 */
+	long pawnsKey;
+
+	/**
+	 * The history of the previous positions, used by {@link #unplay()}.
+	 * Three entries per move: whites and blacks masks, then kings mask and previous {@link #nbKingMovesWithoutCapture},
+	 * then the previous {@link #pawnsKey}.
+	 */
+	long[] history;
+
+	/**
+	 * The number of used entries in {@link #history}
+	 */
+	int historySize;
+
+	/**
+	 * The possible moves in the current state: generated on the first request, and kept until the state
+	 * changes with {@link #playUnchecked(Move)} or {@link #unplay()}. <code>null</code> if not generated yet.
+	 * The list is immutable, so it is shared with clones.
+	 */
+	List<Move> cachedMoves;
+
+	/**
+	 * The set of valid move codes, used to check the moves given to {@link #play(Move)} (allocated on first use)
+	 */
+	MoveCodeSet validMoves;
+
+	/**
+	 * Whether {@link #validMoves} holds the codes of the possible moves in the current state
+	 */
+	boolean validMovesUpToDate;
+
+	/**
+	 * The stack of the capture paths being explored by {@link #addCaptures(MoveBuffer, int, int)}
+	 * (allocated on first use, not shared with clones)
+	 */
+	long[] captureStack;
+
+	/** For each level of {@link #captureStack}, the index of the next direction to explore, and {@link #CAPTURE_EXTENDED} */
+	int[] captureNext;
+
+	/**
+	 * The default constructor: initializes a game on the standard 8x8 board.
+	 */
+	public BitboardDraughts() {
+		this.blacks = 0x00000FFF;
+		this.whites = 0xFFF00000;
+		this.kings = 0;
+		this.playerId = PlayerId.ONE;
+		this.nbTurn = 1;
+		this.nbKingMovesWithoutCapture = 0;
+		this.pawnsKey = pawnsKey(whites, blacks, kings);
+		this.history = new long[64];
+		this.historySize = 0;
+	}
+
+	/**
+	 * Copy constructor
+	 * @param d The game to copy
+	 */
+	BitboardDraughts(BitboardDraughts d) {
+		this.whites = d.whites;
+		this.blacks = d.blacks;
+		this.kings = d.kings;
+		this.playerId = d.playerId;
+		this.nbTurn = d.nbTurn;
+		this.nbKingMovesWithoutCapture = d.nbKingMovesWithoutCapture;
+		this.pawnsKey = d.pawnsKey;
+		this.history = new long[64];
+		this.historySize = 0;
+		this.cachedMoves = d.cachedMoves;
+	}
+
+	/**
+	 * Conversion constructor, from a game played on a 8x8 {@link CheckerBoard}
+	 * @param d The game to convert
+	 */
+	BitboardDraughts(EnglishDraughts d) {
+		assert d.board.size == 8 : "Bitboards are only available for 8x8 boards";
+		for (int square = 1; square <= d.board.nbPlayableTiles(); ++square) {
+			int bit = 1 << (square - 1);
+			if (d.board.isWhite(square))
+				whites |= bit;
+			if (d.board.isBlack(square))
+				blacks |= bit;
+			if (d.board.isKing(square))
+				kings |= bit;
+		}
+		this.playerId = d.playerId;
+		this.nbTurn = d.nbTurn;
+		this.nbKingMovesWithoutCapture = d.nbKingMovesWithoutCapture;
+		this.pawnsKey = pawnsKey(whites, blacks, kings);
+		this.history = new long[64];
+		this.historySize = 0;
+	}
+
+	@Override
+	public BitboardDraughts clone() {
+		return new BitboardDraughts(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * The key is the same as the one of {@link EnglishDraughts} for the same state.
+	 */
+	@Override
+	public long hashKey() {
+		return pawnsKey ^ ZobristKeys.player(playerId) ^ ZobristKeys.kingMoves(nbKingMovesWithoutCapture);
+	}
+
+	/**
+	 * Compute the Zobrist key of a pawns placement from scratch (the moves then update it)
+	 * @param whites The mask of the white pawns
+	 * @param blacks The mask of the black pawns
+	 * @param kings The mask of the kings
+	 * @return The XOR of the keys of the pawns on their tiles
+	 */
+	static long pawnsKey(int whites, int blacks, int kings) {
+		long key = 0;
+		for (int pawns = whites | blacks; pawns != 0; pawns &= pawns - 1) {
+			int bit = pawns & -pawns;
+			key ^= pawnKey(bit, (whites & bit) != 0, (kings & bit) != 0);
+		}
+		return key;
+	}
+
+	/**
+	 * Get the Zobrist key of a pawn on a tile
+	 * @param bit The mask of the tile
+	 * @param white Whether the pawn is white
+	 * @param king Whether the pawn is a king
+	 * @return The key of the pawn on the tile
+	 */
+	static long pawnKey(int bit, boolean white, boolean king) {
+		byte pawn;
+		if (white)
+			pawn = king ? CheckerBoard.WHITE_KING : CheckerBoard.WHITE_CHECKER;
+		else
+			pawn = king ? CheckerBoard.BLACK_KING : CheckerBoard.BLACK_CHECKER;
+		return ZobristKeys.PAWNS[pawn][Integer.numberOfTrailingZeros(bit) + 1];
+	}
+
+	@Override
+	public boolean sameState(Game other) {
+		if (!(other instanceof BitboardDraughts))
+			return false;
+		BitboardDraughts d = (BitboardDraughts) other;
+		return whites == d.whites && blacks == d.blacks && kings == d.kings && playerId == d.playerId
+				&& nbTurn == d.nbTurn && nbKingMovesWithoutCapture == d.nbKingMovesWithoutCapture;
+	}
+
+	/**
+	 * Build a {@link CheckerBoard} holding the current position (used for display)
+	 * @return A new 8x8 checker board
+	 */
+	CheckerBoard toCheckerBoard() {
+		CheckerBoard board = new CheckerBoard(8);
+		for (int square = 1; square <= board.nbPlayableTiles(); ++square) {
+			int bit = 1 << (square - 1);
+			boolean isKing = (kings & bit) != 0;
+			if ((whites & bit) != 0)
+				board.set(square, isKing ? CheckerBoard.WHITE_KING : CheckerBoard.WHITE_CHECKER);
+			else if ((blacks & bit) != 0)
+				board.set(square, isKing ? CheckerBoard.BLACK_KING : CheckerBoard.BLACK_CHECKER);
+			else
+				board.removePawn(square);
+		}
+		return board;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append(nbTurn);
+		sb.append(". ");
+		sb.append(this.playerId==PlayerId.ONE?"W":"B");
+		sb.append(":");
+		sb.append(toCheckerBoard().toString());
+		return sb.toString();
+	}
+
+	@Override
+	public String playerName(PlayerId playerId) {
+		switch (playerId) {
+		case ONE:
+			return "Player with the whites";
+		case TWO:
+			return "Player with the blacks";
+		case NONE:
+		default:
+			return "Nobody";
+		}
+	}
+
+	@Override
+	public String view() {
+		return toCheckerBoard().boardView() + "Turn #" + nbTurn + ". " + playerName(playerId) + " plays.\n";
+	}
+
+	/**
+	 * Move all the tiles of a mask to their top-left neighbor (i.e towards the blacks side)
+	 * @param squares Mask of tiles
+	 * @return Mask of the top-left neighbors (tiles without neighbor are dropped)
+	 */
+	static int upLeft(int squares) {
+		return ((squares & EVEN_ROWS & ~TOP_ROW) >>> 4) | ((squares & ODD_ROWS & ~LEFT_COLUMN) >>> 5);
+	}
+
+	/**
+	 * Move all the tiles of a mask to their top-right neighbor (i.e towards the blacks side)
+	 * @param squares Mask of tiles
+	 * @return Mask of the top-right neighbors (tiles without neighbor are dropped)
+	 */
+	static int upRight(int squares) {
+		return ((squares & EVEN_ROWS & ~TOP_ROW & ~RIGHT_COLUMN) >>> 3) | ((squares & ODD_ROWS) >>> 4);
+	}
+
+	/**
+	 * Move all the tiles of a mask to their bottom-left neighbor (i.e towards the whites side)
+	 * @param squares Mask of tiles
+	 * @return Mask of the bottom-left neighbors (tiles without neighbor are dropped)
+	 */
+	static int downLeft(int squares) {
+		return ((squares & EVEN_ROWS) << 4) | ((squares & ODD_ROWS & ~LEFT_COLUMN & ~BOTTOM_ROW) << 3);
+	}
+
+	/**
+	 * Move all the tiles of a mask to their bottom-right neighbor (i.e towards the whites side)
+	 * @param squares Mask of tiles
+	 * @return Mask of the bottom-right neighbors (tiles without neighbor are dropped)
+	 */
+	static int downRight(int squares) {
+		return ((squares & EVEN_ROWS & ~RIGHT_COLUMN) << 5) | ((squares & ODD_ROWS & ~BOTTOM_ROW) << 4);
+	}
+
+	/**
+	 * Move all the tiles of a mask to their neighbor in the given direction
+	 * @param squares Mask of tiles
+	 * @param direction One of {@link #UP_LEFT}, {@link #UP_RIGHT}, {@link #DOWN_LEFT}, {@link #DOWN_RIGHT}
+	 * @return Mask of the neighbors
+	 */
+	static int shift(int squares, int direction) {
+		switch (direction) {
+		case UP_LEFT:		return upLeft(squares);
+		case UP_RIGHT:		return upRight(squares);
+		case DOWN_LEFT:		return downLeft(squares);
+		default:			return downRight(squares);
+		}
+	}
+
+	/**
+	 * Mask of the pawns owned by the current player
+	 * @return
+	 */
+	int myPawns() {
+		return playerId == PlayerId.ONE ? whites : blacks;
+	}
+
+	/**
+	 * Mask of the pawns owned by the adversary
+	 * @return
+	 */
+	int adversaryPawns() {
+		return playerId == PlayerId.ONE ? blacks : whites;
+	}
+
+	/**
+	 * Mask of the pawns of the current player that can capture at least one adversary pawn
+	 * @return
+	 */
+	int jumpers() {
+		int mine = myPawns();
+		int adversary = adversaryPawns();
+		int empty = ~(whites | blacks);
+		int forward, backward;
+		// Walk back from the empty tiles, over the adversary pawns, to find the jumping pawns
+		int overUpLeft = downRight(downRight(empty) & adversary);
+		int overUpRight = downLeft(downLeft(empty) & adversary);
+		int overDownLeft = upRight(upRight(empty) & adversary);
+		int overDownRight = upLeft(upLeft(empty) & adversary);
+		if (playerId == PlayerId.ONE) {
+			forward = (overUpLeft | overUpRight) & mine;
+			backward = (overDownLeft | overDownRight) & mine & kings;
+		} else {
+			forward = (overDownLeft | overDownRight) & mine;
+			backward = (overUpLeft | overUpRight) & mine & kings;
+		}
+		return forward | backward;
+	}
+
+	/**
+	 * Mask of the pawns of the current player that can move to a neighbor tile (without capture)
+	 * @return
+	 */
+	int movers() {
+		int mine = myPawns();
+		int empty = ~(whites | blacks);
+		int forward, backward;
+		if (playerId == PlayerId.ONE) {
+			forward = (downRight(upLeft(mine) & empty) | downLeft(upRight(mine) & empty)) & mine;
+			backward = (upRight(downLeft(mine & kings) & empty) | upLeft(downRight(mine & kings) & empty)) & mine;
+		} else {
+			forward = (upRight(downLeft(mine) & empty) | upLeft(downRight(mine) & empty)) & mine;
+			backward = (downRight(upLeft(mine & kings) & empty) | downLeft(upRight(mine & kings) & empty)) & mine;
+		}
+		return forward | backward;
+	}
+
+	/**
+	 * List the maximal captures of a pawn, with multiple captures.
+	 * The exploration is iterative, with an explicit stack of the jumps ({@link #captureStack}) and a mask of the
+	 * pawns already taken by the path: a pawn cannot be taken twice, and the origin tile counts as empty.
+	 * Each maximal sequence of jumps is added once. The board is not modified during the exploration.
+	 * @param moves The buffer where to add the codes of the maximal capture moves
+	 * @param from Mask of the tile of the capturing pawn
+	 * @param nbDirections Number of allowed directions (2 for checkers, 4 for kings)
+	 */
+	void addCaptures(MoveBuffer moves, int from, int nbDirections) {
+		if (captureStack == null) {
+			captureStack = new long[MAX_JUMPS + 1];
+			captureNext = new int[MAX_JUMPS + 1];
+		}
+		int[] directions = DIRECTIONS[playerId == PlayerId.ONE ? 0 : 1];
+		int adversary = adversaryPawns();
+		int empty = ~(whites | blacks) | from;
+		int captured = 0;
+
+		int origin = Integer.numberOfTrailingZeros(from) + 1;
+		int depth = 0;
+		captureStack[0] = DraughtsMove.encode(8, origin, origin);
+		captureNext[0] = 0;
+		while (depth >= 0) {
+			long path = captureStack[depth];
+			int square = 1 << (DraughtsMove.to(path) - 1);
+			int k = captureNext[depth] & ~CAPTURE_EXTENDED;
+			boolean pushed = false;
+			while (k < nbDirections) {
+				int direction = directions[k++];
+				int jumped = shift(square, direction) & adversary & ~captured;
+				int destination = shift(jumped, direction) & empty;
+				if (destination != 0) {
+					captureNext[depth] = k | CAPTURE_EXTENDED;
+					captured |= jumped;
+					depth++;
+					int landing = Integer.numberOfTrailingZeros(destination) + 1;
+					captureStack[depth] = DraughtsMove.encodeJump(path, direction, landing);
+					captureNext[depth] = 0;
+					pushed = true;
+					break;
+				}
+			}
+			if (pushed)
+				continue;
+			// All directions explored: pop the jump, adding the path if it could not be extended
+			if (depth > 0) {
+				if ((captureNext[depth] & CAPTURE_EXTENDED) == 0)
+					moves.add(path);
+				int parent = 1 << (DraughtsMove.to(captureStack[depth - 1]) - 1);
+				captured &= ~shift(parent, DraughtsMove.jumpDirection(path, depth - 1));
+			}
+			depth--;
+		}
+	}
+
+	/**
+	 * Get the list of possible moves. The list is generated once per game state, and is immutable.
+	 */
+	@Override
+	public List<Move> possibleMoves() {
+		if (cachedMoves == null)
+			cachedMoves = Collections.unmodifiableList(computePossibleMoves());
+		return cachedMoves;
+	}
+
+	/**
+	 * Generate the list of possible moves
+	 * - first check moves with captures
+	 * - if no capture possible, return displacement moves
+	 */
+	ArrayList<Move> computePossibleMoves() {
+		MoveBuffer codes = new MoveBuffer();
+		int nbMoves = generateMoves(codes);
+		ArrayList<Move> moves = new ArrayList<>(nbMoves);
+		for (int i = 0; i < nbMoves; ++i) {
+			moves.add(new DraughtsMove(codes.get(i)));
+		}
+		return moves;
+	}
+
+	/**
+	 * Generate the codes of the possible moves (see {@link DraughtsMove}), without allocation:
+	 * - first check moves with captures
+	 * - if no capture possible, add displacement moves
+	 */
+	@Override
+	public int generateMoves(MoveBuffer moves) {
+		moves.clear();
+
+		// Captures
+		int jumpers = jumpers();
+		if (jumpers != 0) {
+			for (int pawns = jumpers; pawns != 0; pawns &= pawns - 1) {
+				int square = pawns & -pawns;
+				addCaptures(moves, square, (kings & square) != 0 ? 4 : 2);
+			}
+			return moves.size();
+		}
+
+		// Displacements
+		int[] directions = DIRECTIONS[playerId == PlayerId.ONE ? 0 : 1];
+		int empty = ~(whites | blacks);
+		for (int pawns = movers(); pawns != 0; pawns &= pawns - 1) {
+			int square = pawns & -pawns;
+			int nbDirections = (kings & square) != 0 ? 4 : 2;
+			int from = Integer.numberOfTrailingZeros(square) + 1;
+			for (int k = 0; k < nbDirections; ++k) {
+				int destination = shift(square, directions[k]) & empty;
+				if (destination != 0) {
+					int to = Integer.numberOfTrailingZeros(destination) + 1;
+					moves.add(DraughtsMove.encode(8, from, to));
+				}
+			}
+		}
+		return moves.size();
+	}
+
+	@Override
+	public Move decodeMove(long code) {
+		return new DraughtsMove(code);
+	}
+
+	@Override
+	public void play(Move aMove) {
+		// Player should be valid
+		if (playerId == PlayerId.NONE)
+			return;
+		// Moves use the packed encoding of EnglishDraughts
+		if (!(aMove instanceof DraughtsMove))
+			return;
+		if (!isValid((DraughtsMove) aMove))
+			return;
+		playUnchecked(aMove);
+	}
+
+	/**
+	 * Check if a move can be played in the current state, with a hash lookup in the valid move codes
+	 * @param move The move to check
+	 * @return <code>true</code> if the move is in {@link #possibleMoves()}
+	 */
+	boolean isValid(DraughtsMove move) {
+		if (!validMovesUpToDate) {
+			if (validMoves == null)
+				validMoves = new MoveCodeSet();
+			validMoves.clear();
+			for (Move possibleMove : possibleMoves()) {
+				validMoves.add(((DraughtsMove) possibleMove).code);
+			}
+			validMovesUpToDate = true;
+		}
+		return validMoves.contains(move.code);
+	}
+
+	/**
+	 * Forget the possible moves of the previous state (to be called on each state change)
+	 */
+	void clearMoveCache() {
+		cachedMoves = null;
+		validMovesUpToDate = false;
+	}
+
+	@Override
+	public void playUnchecked(Move aMove) {
+		playUnchecked(((DraughtsMove) aMove).code);
+	}
+
+	@Override
+	public void playUnchecked(long code) {
+		clearMoveCache();
+
+		// Record the position for unplay()
+		if (historySize + 3 > history.length)
+			history = Arrays.copyOf(history, 2 * history.length);
+		history[historySize++] = ((long) whites << 32) | (blacks & 0xFFFFFFFFL);
+		history[historySize++] = ((long) kings << 32) | (nbKingMovesWithoutCapture & 0xFFFFFFFFL);
+		history[historySize++] = pawnsKey;
+
+		int from = 1 << (DraughtsMove.from(code) - 1);
+		int to = 1 << (DraughtsMove.to(code) - 1);
+		boolean isKing = (kings & from) != 0;
+		boolean isWhite = playerId == PlayerId.ONE;
+		pawnsKey ^= pawnKey(from, isWhite, isKing);
+
+		// Collect captured pawns by following the jumps of the path
+		int captured = 0;
+		int square = from;
+		for (int i = 0; i < DraughtsMove.nbJumps(code); ++i) {
+			int direction = DraughtsMove.jumpDirection(code, i);
+			square = shift(square, direction);
+			captured |= square;
+			pawnsKey ^= pawnKey(square, !isWhite, (kings & square) != 0);
+			square = shift(square, direction);
+		}
+
+		// Move pawn and remove captured opponents
+		if (playerId == PlayerId.ONE)
+			whites = (whites & ~from) | to;
+		else
+			blacks = (blacks & ~from) | to;
+		if (isKing)
+			kings = (kings & ~from) | to;
+		whites &= ~captured;
+		blacks &= ~captured;
+		kings &= ~captured;
+
+		// Keep track of successive moves with kings without capture
+		if (captured == 0 && isKing)
+			nbKingMovesWithoutCapture++;
+		else
+			nbKingMovesWithoutCapture = 0;
+
+		// Promote to king if the pawn ends on the opposite of the board
+		if (playerId == PlayerId.ONE && (to & TOP_ROW) != 0)
+			kings |= to;
+		if (playerId == PlayerId.TWO && (to & BOTTOM_ROW) != 0)
+			kings |= to;
+		pawnsKey ^= pawnKey(to, isWhite, (kings & to) != 0);
+
+		// Next player
+		playerId = playerId.other();
+
+		// Update nbTurn
+		nbTurn++;
+	}
+
+	@Override
+	public void unplay() {
+		assert historySize > 0 : "No move to unplay";
+		clearMoveCache();
+		pawnsKey = history[--historySize];
+		long info = history[--historySize];
+		long pawns = history[--historySize];
+		whites = (int) (pawns >>> 32);
+		blacks = (int) pawns;
+		kings = (int) (info >>> 32);
+		nbKingMovesWithoutCapture = (int) info;
+		playerId = playerId.other();
+		nbTurn--;
+	}
+
+	@Override
+	public PlayerId player() {
+		return playerId;
+	}
+
+	/**
+	 * Check if the current player can move, with a few mask operations instead of generating the moves.
+	 */
+	@Override
+	public boolean hasAnyLegalMove() {
+		return movers() != 0 || jumpers() != 0;
+	}
+
+	/**
+	 * Get the winner (or null if the game is still going)
+	 * Same rules as {@link EnglishDraughts#winner()}.
+	 */
+	@Override
+	public PlayerId winner() {
+		if (!hasAnyLegalMove())
+			return playerId.other();
+		else if (nbKingMovesWithoutCapture >= 25)
+			return PlayerId.NONE;
+		return null;
+	}
+}
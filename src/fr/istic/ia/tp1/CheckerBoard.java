@@ -4,6 +4,7 @@
 package fr.istic.ia.tp1;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
@@ -16,6 +17,18 @@ public class CheckerBoard {
 	final byte size;
 	private byte[] state;
 	
+	/** The geometry lookup tables, shared by all the boards of the same size */
+	final Geometry geometry;
+	
+	/** Set of the tiles holding a white pawn: bit <code>i % 64</code> of word <code>i / 64</code> for tile <code>i</code> */
+	private long[] whitePawns;
+	
+	/** Set of the tiles holding a black pawn: bit <code>i % 64</code> of word <code>i / 64</code> for tile <code>i</code> */
+	private long[] blackPawns;
+	
+	/** The Zobrist key of the pawns placement, see {@link ZobristKeys#PAWNS} */
+	private long hashKey;
+	
 	/** An ID indicating a point was not on the checker board. */
 	public static final byte INVALID = -1;
 
@@ -34,6 +47,83 @@ public class CheckerBoard {
 	/** The ID of a white checker that is also a king. */
 	public static final byte WHITE_KING = 4 * 1 + 2 * 0 + 1 * 1;
 	
+	/** Direction towards the top-left neighbor (blacks side) */
+	public static final int UP_LEFT = 0;
+	
+	/** Direction towards the top-right neighbor (blacks side) */
+	public static final int UP_RIGHT = 1;
+	
+	/** Direction towards the bottom-left neighbor (whites side) */
+	public static final int DOWN_LEFT = 2;
+	
+	/** Direction towards the bottom-right neighbor (whites side) */
+	public static final int DOWN_RIGHT = 3;
+	
+	/**
+	 * Immutable lookup tables describing the geometry of a board of a given size.
+	 * Built once per board size and shared by all the boards of that size, so that
+	 * neighbor and jump queries are single array loads.
+	 * All tables are indexed by tile number; index 0 (no tile) maps to 0 (no neighbor).
+	 */
+	static final class Geometry {
+		/** Number of playable tiles */
+		final int nbPlayableTiles;
+		
+		/** Neighbor of each tile, indexed by [direction][tile] (0 if no neighbor) */
+		final int[][] neighbors;
+		
+		/** Landing tile of a jump from each tile, indexed by [direction][tile] (0 if the jump leaves the board) */
+		final int[][] jumps;
+		
+		/** Tile jumped over when jumping from tile a to tile b, indexed by [a * (nbPlayableTiles+1) + b] (0 if not a jump) */
+		final int[] between;
+		
+		/** Geometries for the valid board sizes, indexed by size */
+		private static final Geometry[] GEOMETRIES = new Geometry[13];
+		static {
+			for (int size = 4; size <= 12; size += 2) {
+				GEOMETRIES[size] = new Geometry(size);
+			}
+		}
+		
+		/**
+		 * Get the shared geometry tables for a board size
+		 * @param size The size of one side of the checker board
+		 * @return The geometry of a <code>size</code> x <code>size</code> board
+		 */
+		static Geometry of(int size) {
+			return GEOMETRIES[size];
+		}
+		
+		/**
+		 * Build the tables, using the tile coordinates
+		 * @param size The size of one side of the checker board
+		 */
+		private Geometry(int size) {
+			nbPlayableTiles = (size * size) / 2;
+			neighbors = new int[4][nbPlayableTiles + 1];
+			jumps = new int[4][nbPlayableTiles + 1];
+			between = new int[(nbPlayableTiles + 1) * (nbPlayableTiles + 1)];
+			int[] dx = { -1, 1, -1, 1 };
+			int[] dy = { 1, 1, -1, -1 };
+			for (int y = 0; y < size; ++y) {
+				for (int x = 0; x < size; ++x) {
+					int square = coordsToNumber(size, x, y);
+					if (square <= 0)
+						continue;
+					for (int direction = UP_LEFT; direction <= DOWN_RIGHT; ++direction) {
+						int neighbor = Math.max(0, coordsToNumber(size, x + dx[direction], y + dy[direction]));
+						int jump = Math.max(0, coordsToNumber(size, x + 2*dx[direction], y + 2*dy[direction]));
+						neighbors[direction][square] = neighbor;
+						jumps[direction][square] = jump;
+						if (jump > 0)
+							between[square * (nbPlayableTiles + 1) + jump] = neighbor;
+					}
+				}
+			}
+		}
+	}
+	
 	/** 
 	 *  Default constructor, create a 64-tile (8x8) checker board.
 	 */
@@ -49,8 +139,11 @@ public class CheckerBoard {
 		assert size >= 3 && size <= 12 : "Cannot create board with size <3 or >12";
 		assert size % 2 == 0 : "Cannot create a board with odd size";
 		this.size = (byte)size;
+		this.geometry = Geometry.of(size);
 		int nbPlaces = (size * size) / 2;
 		this.state = new byte[nbPlaces];
+		this.whitePawns = new long[nbPlaces / 64 + 1];
+		this.blackPawns = new long[nbPlaces / 64 + 1];
 		int nbPawnsPerPlayer = (size/2 - 1) * (size/2);
 		for (int k = 0; k<nbPawnsPerPlayer; ++k) {
 			set(nbPlaces - k, WHITE_CHECKER);
@@ -64,7 +157,11 @@ public class CheckerBoard {
 	 */
 	protected CheckerBoard(CheckerBoard board) {
 		this.size = board.size;
+		this.geometry = board.geometry;
 		this.state = board.state.clone();
+		this.whitePawns = board.whitePawns.clone();
+		this.blackPawns = board.blackPawns.clone();
+		this.hashKey = board.hashKey;
 	}
 	
 	@Override
@@ -86,8 +183,8 @@ public class CheckerBoard {
 	 * @return
 	 */
 	public boolean isEmpty() {
-		for (int i=1; i<=nbPlayableTiles(); ++i)
-			if (get(i) != EMPTY)
+		for (int i=0; i<whitePawns.length; ++i)
+			if (whitePawns[i] != 0 || blackPawns[i] != 0)
 				return false;
 		return true;
 	}
@@ -115,6 +212,23 @@ public class CheckerBoard {
 		}
 	}
 	
+	/**
+	 * Get the Zobrist key of the pawns placement, updated by each change of a tile
+	 * @return The XOR of the keys of the pawns on their tiles
+	 */
+	long hashKey() {
+		return hashKey;
+	}
+	
+	/**
+	 * Check if another board has the same pawns on the same tiles
+	 * @param other Another board
+	 * @return <code>true</code> if both boards have the same size and content
+	 */
+	boolean sameTiles(CheckerBoard other) {
+		return size == other.size && Arrays.equals(state, other.state);
+	}
+	
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer("W");
@@ -146,6 +260,17 @@ public class CheckerBoard {
 	 * @return Tile number if the tile is black (playable), 0 if the tile is white, -1 if out of board.
 	 */
 	public int coordsToNumber(int x, int y) {
+		return coordsToNumber(size, x, y);
+	}
+	
+	/**
+	 * Compute the number of a board tile from its coordinates, on a board of a given size
+	 * @param size The size of one side of the checker board
+	 * @param x Column ID, starting from 0 for the left-most column
+	 * @param y Row ID, stating from 0 for the bottom row (whites side of the board).
+	 * @return Tile number if the tile is black (playable), 0 if the tile is white, -1 if out of board.
+	 */
+	static int coordsToNumber(int size, int x, int y) {
 		if (x<0 || y<0 || x>=size || y>=size) {
 			return -1;
 		}
@@ -206,7 +331,17 @@ public class CheckerBoard {
 	 * @param value ID of the pawn type (e.g {@link CheckerBoard#BLACK_CHECKER}, {@link CheckerBoard#BLACK_KING}... or {@link CheckerBoard#EMPTY})
 	 */
 	 void set(int square, byte value) {
+		hashKey ^= ZobristKeys.PAWNS[state[square-1]][square] ^ ZobristKeys.PAWNS[value][square];
 		state[square-1] = value;
+		// Keep the pawn sets up to date
+		int word = square >>> 6;
+		long bit = 1L << square;
+		whitePawns[word] &= ~bit;
+		blackPawns[word] &= ~bit;
+		if (value == WHITE_CHECKER || value == WHITE_KING)
+			whitePawns[word] |= bit;
+		else if (value == BLACK_CHECKER || value == BLACK_KING)
+			blackPawns[word] |= bit;
 	}
 	
 	/**
@@ -265,16 +400,33 @@ public class CheckerBoard {
 				&& (lineOfSquare(square) % 2 == 1) ;
 	}
 	
+	/**
+	 * Get the tile-number of the neighbor of a given tile in a given direction
+	 * @param square Number of the given tile
+	 * @param direction One of {@link #UP_LEFT}, {@link #UP_RIGHT}, {@link #DOWN_LEFT}, {@link #DOWN_RIGHT}
+	 * @return Neighbor of the given square number, 0 if no neighbor
+	 */
+	public int neighbor(int square, int direction) {
+		return geometry.neighbors[direction][square];
+	}
+	
+	/**
+	 * Get the landing tile-number of a jump from a given tile in a given direction
+	 * @param square Number of the given tile
+	 * @param direction One of {@link #UP_LEFT}, {@link #UP_RIGHT}, {@link #DOWN_LEFT}, {@link #DOWN_RIGHT}
+	 * @return Landing square number, 0 if the jump leaves the board
+	 */
+	public int jump(int square, int direction) {
+		return geometry.jumps[direction][square];
+	}
+	
 	/**
 	 * Get the tile-number of the top-left neighbor (i.e towards the blacks side) of a given tile
 	 * @param square Number of the given tile
 	 * @return Top-left neighbor of the given square number, 0 if no neighbor
 	 */
 	public int neighborUpLeft(int square) {
-		if (!inTopRow(square) && !inLeftRow(square))
-			return square - (size / 2) - (lineOfSquare(square)+1) % 2;
-		else
-			return 0;
+		return geometry.neighbors[UP_LEFT][square];
 	}
 	
 	/**
@@ -283,10 +435,7 @@ public class CheckerBoard {
 	 * @return Bottom-left neighbor of the given square number, 0 if no neighbor
 	 */
 	public int neighborDownLeft(int square) {
-		if (!inBottomRow(square) && !inLeftRow(square))
-			return square + (size / 2) - (lineOfSquare(square)+1) % 2;
-		else
-			return 0;
+		return geometry.neighbors[DOWN_LEFT][square];
 	}
 	
 	/**
@@ -295,10 +444,7 @@ public class CheckerBoard {
 	 * @return Top-right neighbor of the given square number, 0 if no neighbor
 	 */
 	public int neighborUpRight(int square) {
-		if (!inTopRow(square) && !inRightRow(square))
-			return square - (size / 2) - (lineOfSquare(square)+1) % 2 + 1;
-		else
-			return 0;
+		return geometry.neighbors[UP_RIGHT][square];
 	}
 	
 	/**
@@ -307,24 +453,17 @@ public class CheckerBoard {
 	 * @return Bottom-right neighbor of the given square number, 0 if no neighbor
 	 */
 	public int neighborDownRight(int square) {
-		if (!inBottomRow(square) && !inRightRow(square))
-			return square + (size / 2) - (lineOfSquare(square)+1) % 2 + 1;
-		else
-			return 0;
+		return geometry.neighbors[DOWN_RIGHT][square];
 	}
 	
 	/**
-	 * The number of the square between the two squares <code>square1</code> and <code>square2</code>.
-	 * Only valid if <code>square1</code> and <code>square2</code> are in the same diagonal.
+	 * The number of the square jumped over when jumping from <code>square1</code> to <code>square2</code>.
 	 * @param square1
 	 * @param square2
-	 * @return
+	 * @return The jumped square, 0 if <code>square1</code> to <code>square2</code> is not a jump
 	 */
 	public int squareBetween(int square1, int square2) {
-		if ((square1 - square2 < size/2 + 2) && (square2 - square1 < size/2 + 2))
-			return 0;
-		else
-			return (square1 + square2) / 2 + 1 - (lineOfSquare(square1)+1) % 2;
+		return geometry.between[square1 * (geometry.nbPlayableTiles + 1) + square2];
 	}
 	
 	/**
@@ -396,17 +535,76 @@ public class CheckerBoard {
 			set(square, BLACK_KING);
 	}
 
+	/**
+	 * Find the first tile holding a pawn of a set, starting from a given tile
+	 * @param pawns The set of pawns
+	 * @param square The first tile number to check
+	 * @return The tile number of the pawn, or 0 if there is no pawn after <code>square</code>
+	 */
+	private static int nextPawn(long[] pawns, int square) {
+		int word = square >>> 6;
+		if (word >= pawns.length)
+			return 0;
+		long bits = pawns[word] & (-1L << square);
+		while (bits == 0) {
+			if (++word == pawns.length)
+				return 0;
+			bits = pawns[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(bits);
+	}
+	
+	/**
+	 * Find the next white pawn, in increasing tile order. Used to iterate over the white pawns without allocation:
+	 * <code>for (int pawn = board.nextWhitePawn(1); pawn != 0; pawn = board.nextWhitePawn(pawn + 1))</code>
+	 * @param square The first tile number to check
+	 * @return The tile number of the first white pawn at or after <code>square</code>, 0 if none
+	 */
+	public int nextWhitePawn(int square) {
+		return nextPawn(whitePawns, square);
+	}
+	
+	/**
+	 * Find the next black pawn, in increasing tile order. Used to iterate over the black pawns without allocation:
+	 * <code>for (int pawn = board.nextBlackPawn(1); pawn != 0; pawn = board.nextBlackPawn(pawn + 1))</code>
+	 * @param square The first tile number to check
+	 * @return The tile number of the first black pawn at or after <code>square</code>, 0 if none
+	 */
+	public int nextBlackPawn(int square) {
+		return nextPawn(blackPawns, square);
+	}
+	
+	/**
+	 * Count the white pawns (checkers and kings) on the board
+	 * @return The number of white pawns
+	 */
+	public int nbWhitePawns() {
+		int count = 0;
+		for (long bits : whitePawns)
+			count += Long.bitCount(bits);
+		return count;
+	}
+	
+	/**
+	 * Count the black pawns (checkers and kings) on the board
+	 * @return The number of black pawns
+	 */
+	public int nbBlackPawns() {
+		int count = 0;
+		for (long bits : blackPawns)
+			count += Long.bitCount(bits);
+		return count;
+	}
+
 	/**
 	 * Retrieve the positions of all white pawns in the board
 	 * @return The list of white pawns
 	 */
 	public ArrayList<Integer> getWhitePawns() {
 		ArrayList<Integer> myPawns = new ArrayList<Integer>();
-		myPawns.ensureCapacity((size/2 - 1) * (size/2));
-		for (int pawn = 1; pawn <= nbPlayableTiles(); ++pawn) {
-			if ( isWhite(pawn) ) {
-				myPawns.add( pawn );
-			}
+		myPawns.ensureCapacity(nbWhitePawns());
+		for (int pawn = nextWhitePawn(1); pawn != 0; pawn = nextWhitePawn(pawn + 1)) {
+			myPawns.add( pawn );
 		}
 		return myPawns;
 	}
@@ -417,11 +615,9 @@ public class CheckerBoard {
 	 */
 	public ArrayList<Integer> getBlackPawns() {
 		ArrayList<Integer> myPawns = new ArrayList<Integer>();
-		myPawns.ensureCapacity((size/2 - 1) * (size/2));
-		for (int pawn = 1; pawn <= nbPlayableTiles(); ++pawn) {
-			if ( isBlack(pawn) ) {
-				myPawns.add( pawn );
-			}
+		myPawns.ensureCapacity(nbBlackPawns());
+		for (int pawn = nextBlackPawn(1); pawn != 0; pawn = nextBlackPawn(pawn + 1)) {
+			myPawns.add( pawn );
 		}
 		return myPawns;
 	}
@@ -2,7 +2,7 @@ package fr.istic.ia.tp1;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -34,34 +34,304 @@ public class EnglishDraughts extends Game {
 	 */
 	int nbKingMovesWithoutCapture;
 	
+	/**
+	 * The history of played moves, used by {@link #unplay()}.
+	 * Two entries per move: the move code, then the undo information
+	 * (previous {@link #nbKingMovesWithoutCapture}, promotion flag and kind of the captured pawns).
+	 */
+	long[] history;
+	
+	/**
+	 * The number of used entries in {@link #history}
+	 */
+	int historySize;
+	
+	/**
+	 * The possible moves in the current state: generated on the first request, and kept until the state
+	 * changes with {@link #playUnchecked(Move)} or {@link #unplay()}. <code>null</code> if not generated yet.
+	 * The list is immutable, so it is shared with clones.
+	 */
+	List<Move> cachedMoves;
+	
+	/**
+	 * The set of valid move codes, used to check the moves given to {@link #play(Move)} (allocated on first use)
+	 */
+	MoveCodeSet validMoves;
+	
+	/**
+	 * Whether {@link #validMoves} holds the codes of the possible moves in the current state
+	 */
+	boolean validMovesUpToDate;
+	
+	/**
+	 * The stack of the capture paths being explored by {@link #prisesPossiblesDepuisCase(MoveBuffer, int, boolean)}
+	 * (allocated on first use, not shared with clones)
+	 */
+	long[] captureStack;
+	
+	/** For each level of {@link #captureStack}, the index of the next direction to explore, and {@link #CAPTURE_EXTENDED} */
+	int[] captureNext;
+	
+	/** The set of pawns taken by the capture path being explored: bit <code>i % 64</code> of word <code>i / 64</code> for tile <code>i</code> */
+	long[] capturedSquares;
+	
+	/** Flag of {@link #captureNext}: the capture path of this level has been extended by at least one jump */
+	static final int CAPTURE_EXTENDED = 1 << 8;
+	
+	/** Flag of the undo information: the moving pawn was crowned */
+	static final long UNDO_PROMOTED = 1L << 32;
+	
+	/** First flag of the undo information telling which captured pawns were kings (one bit per jump) */
+	static final int UNDO_CAPTURED_KING_SHIFT = 33;
+	
+	/**
+	 * Directions explored for each player (see {@link CheckerBoard#neighbor(int, int)}):
+	 * first the two forward directions (the only ones allowed for checkers), then the two backward directions.
+	 */
+	static final int[][] DIRECTIONS = {
+			{ CheckerBoard.UP_LEFT, CheckerBoard.UP_RIGHT, CheckerBoard.DOWN_LEFT, CheckerBoard.DOWN_RIGHT }, // whites
+			{ CheckerBoard.DOWN_LEFT, CheckerBoard.DOWN_RIGHT, CheckerBoard.UP_LEFT, CheckerBoard.UP_RIGHT }  // blacks
+	};
+	
 	/**
 	 * Class representing a move in the English draughts game
-	 * A move is an ArrayList of Integers, corresponding to the successive tile numbers (Manouri notation)
+	 * A move is packed in a single <code>long</code> code, holding the origin and destination tiles,
+	 * the board size, and the direction of each successive jump for captures.
+	 * The intermediate tiles (Manouri notation) and the captured pawns are recovered from the
+	 * shared {@link CheckerBoard.Geometry} tables, so a move does not keep any reference to a game or a board.
+	 * The static methods work directly on codes, the class itself is only a thin {@link Game.Move} wrapper.
+	 * A code packs up to {@link #MAX_PACKED_JUMPS} jump directions, 2 bits each. The longer captures (only possible on the largest boards)
+	 * use an extended code: as a jump never goes back over the pawn it has just taken, each jump after the first one
+	 * has only 3 possible directions, which fit 30 jumps in the code in base 3, in place of the origin tile
+	 * (recovered by walking the path back from the destination).
 	 * toString is overrided to provide Manouri notation output.
 	 * @author vdrevell
 	 *
 	 */
-	class DraughtsMove extends ArrayList<Integer> implements Game.Move {
-
-		private static final long serialVersionUID = -8215846964873293714L;
+	static final class DraughtsMove implements Game.Move {
+		/** Maximum number of jumps whose directions are packed in the move code */
+		static final int MAX_PACKED_JUMPS = 21;
+		
+		/** Maximum number of jumps of a move, on the largest board (see {@link #maxJumps(int)}) */
+		static final int MAX_JUMPS = 30;
+		
+		private static final int FROM_SHIFT = 0;
+		private static final int TO_SHIFT = 7;
+		private static final int HALF_SIZE_SHIFT = 14;
+		private static final int NB_JUMPS_SHIFT = 17;
+		private static final int DIRECTIONS_SHIFT = 22;
+		private static final long SQUARE_MASK = 0x7F;
+		private static final long HALF_SIZE_MASK = 0x7;
+		private static final long NB_JUMPS_MASK = 0x1F;
+		
+		/** The packed move */
+		final long code;
+		
+		/**
+		 * Wrap a move code
+		 * @param code A code built by {@link #encode(int, int, int)} and {@link #encodeJump(long, int, int)}
+		 */
+		DraughtsMove(long code) {
+			this.code = code;
+		}
+		
+		/**
+		 * Encode a displacement move (without capture).
+		 * Also used to start a capture path, with <code>to == from</code>.
+		 * @param boardSize Size of the checker board
+		 * @param from Origin tile number
+		 * @param to Destination tile number
+		 * @return The move code
+		 */
+		static long encode(int boardSize, int from, int to) {
+			return ((long) from << FROM_SHIFT) | ((long) to << TO_SHIFT) | ((long) (boardSize / 2) << HALF_SIZE_SHIFT);
+		}
+		
+		/**
+		 * Append a jump to a move code
+		 * @param code The move code to extend
+		 * @param direction Direction of the jump (see {@link CheckerBoard#neighbor(int, int)})
+		 * @param landing Landing tile number of the jump
+		 * @return The extended move code
+		 */
+		static long encodeJump(long code, int direction, int landing) {
+			int nbJumps = nbJumps(code);
+			assert nbJumps < MAX_JUMPS : "Too many jumps to encode";
+			if (nbJumps < MAX_PACKED_JUMPS)
+				return (code & ~(SQUARE_MASK << TO_SHIFT) & ~(NB_JUMPS_MASK << NB_JUMPS_SHIFT))
+						| ((long) landing << TO_SHIFT)
+						| ((long) (nbJumps + 1) << NB_JUMPS_SHIFT)
+						| ((long) direction << (DIRECTIONS_SHIFT + 2 * nbJumps));
+			// Extended code: the first direction, then the next ones in base 3
+			long path;
+			if (nbJumps == MAX_PACKED_JUMPS) {
+				path = jumpDirection(code, 0);
+				for (int i = 1; i < nbJumps; ++i) {
+					path += 4 * pow3(i - 1) * turn(jumpDirection(code, i - 1), jumpDirection(code, i));
+				}
+			}
+			else {
+				path = extendedPath(code);
+			}
+			path += 4 * pow3(nbJumps - 1) * turn(jumpDirection(code, nbJumps - 1), direction);
+			return (code & (HALF_SIZE_MASK << HALF_SIZE_SHIFT))
+					| ((long) landing << TO_SHIFT)
+					| ((long) (nbJumps + 1) << NB_JUMPS_SHIFT)
+					| (path & SQUARE_MASK) | ((path >>> 7) << DIRECTIONS_SHIFT);
+		}
+		
+		/**
+		 * @param code An extended code
+		 * @return The path of the code: the first direction, plus 4 times the next ones in base 3 (see {@link #turn(int, int)})
+		 */
+		private static long extendedPath(long code) {
+			return ((code >>> DIRECTIONS_SHIFT) << 7) | (code & SQUARE_MASK);
+		}
+		
+		/**
+		 * @param previous Direction of a jump
+		 * @param direction Direction of the next jump, which is not the reverse of <code>previous</code>
+		 * @return The index of <code>direction</code> among the 3 directions allowed after <code>previous</code>
+		 */
+		private static int turn(int previous, int direction) {
+			int reverse = 3 - previous;
+			assert direction != reverse : "A jump cannot go back over the pawn just taken";
+			return (direction < reverse) ? direction : direction - 1;
+		}
+		
+		/** @return 3 to the power <code>n</code> */
+		private static long pow3(int n) {
+			long power = 1;
+			for (int i = 0; i < n; ++i) {
+				power *= 3;
+			}
+			return power;
+		}
+		
+		/**
+		 * Get the maximum number of jumps of a move on a board: a jump takes one pawn of the opponent,
+		 * who has at most as many pawns as at the start of the game
+		 * @param boardSize Size of the checker board
+		 * @return The maximum number of jumps of a move
+		 */
+		static int maxJumps(int boardSize) {
+			return (boardSize / 2 - 1) * (boardSize / 2);
+		}
+		
+		/** @return Origin tile number of the move code */
+		static int from(long code) {
+			int nbJumps = nbJumps(code);
+			if (nbJumps <= MAX_PACKED_JUMPS)
+				return (int) ((code >>> FROM_SHIFT) & SQUARE_MASK);
+			// Extended code: walk the path back from the destination
+			int[] directions = new int[nbJumps];
+			for (int i = 0; i < nbJumps; ++i) {
+				directions[i] = jumpDirection(code, i);
+			}
+			int[][] jumps = CheckerBoard.Geometry.of(boardSize(code)).jumps;
+			int square = to(code);
+			for (int i = nbJumps - 1; i >= 0; --i) {
+				square = jumps[3 - directions[i]][square];
+			}
+			return square;
+		}
+		
+		/** @return Destination tile number of the move code */
+		static int to(long code) {
+			return (int) ((code >>> TO_SHIFT) & SQUARE_MASK);
+		}
+		
+		/** @return Size of the board the move code was built for */
+		static int boardSize(long code) {
+			return 2 * (int) ((code >>> HALF_SIZE_SHIFT) & HALF_SIZE_MASK);
+		}
+		
+		/** @return Number of jumps (i.e captures) of the move code, 0 for a displacement */
+		static int nbJumps(long code) {
+			return (int) ((code >>> NB_JUMPS_SHIFT) & NB_JUMPS_MASK);
+		}
+		
+		/** @return Direction of the <code>i</code>-th jump of the move code */
+		static int jumpDirection(long code, int i) {
+			if (nbJumps(code) <= MAX_PACKED_JUMPS)
+				return (int) ((code >>> (DIRECTIONS_SHIFT + 2 * i)) & 3);
+			// Extended code: decode the turns up to the i-th jump
+			long path = extendedPath(code);
+			int direction = (int) (path & 3);
+			path >>>= 2;
+			for (int j = 1; j <= i; ++j) {
+				int turn = (int) (path % 3);
+				path /= 3;
+				direction = (turn < 3 - direction) ? turn : turn + 1;
+			}
+			return direction;
+		}
+		
+		/**
+		 * Build a move from the successive tile numbers of its path
+		 * @param boardSize Size of the checker board
+		 * @param squares Successive tile numbers (Manouri notation)
+		 * @return The move
+		 */
+		static DraughtsMove fromSquares(int boardSize, List<Integer> squares) {
+			CheckerBoard.Geometry geometry = CheckerBoard.Geometry.of(boardSize);
+			int from = squares.get(0);
+			long code = encode(boardSize, from, from);
+			for (int i = 1; i < squares.size(); ++i) {
+				int to = squares.get(i);
+				for (int direction = CheckerBoard.UP_LEFT; direction <= CheckerBoard.DOWN_RIGHT; ++direction) {
+					if (geometry.neighbors[direction][from] == to)
+						return new DraughtsMove(encode(boardSize, from, to));
+					if (geometry.jumps[direction][from] == to)
+						code = encodeJump(code, direction, to);
+				}
+				from = to;
+			}
+			return new DraughtsMove(code);
+		}
+		
+		/** @return Origin tile number */
+		int from() {
+			return from(code);
+		}
+		
+		/** @return Destination tile number */
+		int to() {
+			return to(code);
+		}
+		
+		/** @return Number of captures, 0 for a displacement */
+		int nbJumps() {
+			return nbJumps(code);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof DraughtsMove && ((DraughtsMove) obj).code == code;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Long.hashCode(code);
+		}
 
 		@Override
 		public String toString() {
-			Iterator<Integer> it = this.iterator();
-			Integer from = it.next();
 			StringBuffer sb = new StringBuffer();
-			sb.append(from);
-			while (it.hasNext()) {
-				Integer to = it.next();
-				if (board.neighborDownLeft(from)==to || board.neighborUpLeft(from)==to
-						|| board.neighborDownRight(from)==to || board.neighborUpRight(from)==to) {
-					sb.append('-');
-				}
-				else {
+			int square = from(code);
+			sb.append(square);
+			int nbJumps = nbJumps(code);
+			if (nbJumps == 0) {
+				sb.append('-');
+				sb.append(to(code));
+			}
+			else {
+				int[][] jumps = CheckerBoard.Geometry.of(boardSize(code)).jumps;
+				for (int i = 0; i < nbJumps; ++i) {
+					square = jumps[jumpDirection(code, i)][square];
 					sb.append('x');
+					sb.append(square);
 				}
-				sb.append(to);
-				from = to;
 			}
 			return sb.toString();
 		}
@@ -83,6 +353,8 @@ public class EnglishDraughts extends Game {
 		this.playerId = PlayerId.ONE;
 		this.nbTurn = 1;
 		this.nbKingMovesWithoutCapture = 0;
+		this.history = new long[64];
+		this.historySize = 0;
 	}
 	
 	/**
@@ -94,6 +366,9 @@ public class EnglishDraughts extends Game {
 		this.playerId = d.playerId;
 		this.nbTurn = d.nbTurn;
 		this.nbKingMovesWithoutCapture = d.nbKingMovesWithoutCapture;
+		this.history = new long[64];
+		this.historySize = 0;
+		this.cachedMoves = d.cachedMoves;
 	}
 	
 	@Override
@@ -101,6 +376,25 @@ public class EnglishDraughts extends Game {
 		return new EnglishDraughts(this);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * The key covers the pawns placement, the player to move and the bucket of the king-move counter
+	 * (see {@link ZobristKeys#kingMoves(int)}), not the turn number.
+	 */
+	@Override
+	public long hashKey() {
+		return board.hashKey() ^ ZobristKeys.player(playerId) ^ ZobristKeys.kingMoves(nbKingMovesWithoutCapture);
+	}
+	
+	@Override
+	public boolean sameState(Game other) {
+		if (!(other instanceof EnglishDraughts))
+			return false;
+		EnglishDraughts d = (EnglishDraughts) other;
+		return playerId == d.playerId && nbTurn == d.nbTurn
+				&& nbKingMovesWithoutCapture == d.nbKingMovesWithoutCapture && board.sameTiles(d.board);
+	}
+	
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
@@ -163,6 +457,29 @@ public class EnglishDraughts extends Game {
 		}
 	}
 	
+	/**
+	 * Directions explored by the current player, see {@link #DIRECTIONS}
+	 * @return The directions, forward directions first
+	 */
+	int[] myDirections() {
+		return DIRECTIONS[playerId == PlayerId.ONE ? 0 : 1];
+	}
+	
+	/**
+	 * Find the next pawn owned by the current player, in increasing tile order.
+	 * Used to iterate over the pawns of the current player without allocation:
+	 * <code>for (int pawn = nextPawn(1); pawn != 0; pawn = nextPawn(pawn + 1))</code>
+	 * @param square The first tile number to check
+	 * @return The tile number of the first pawn at or after <code>square</code>, 0 if none
+	 */
+	int nextPawn(int square) {
+		if (playerId == PlayerId.ONE) {
+			return board.nextWhitePawn(square);
+		} else {
+			return board.nextBlackPawn(square);
+		}
+	}
+	
 	/** 
 	 * Retrieve the list of positions of the pawns owned by the current player
 	 * @return The list of current player pawn positions
@@ -176,115 +493,105 @@ public class EnglishDraughts extends Game {
 	}
 
 	/**
-	 * Liste les sauts possibles depuis une case. Prends en compte le fait que ce soit un roi ou non afin de savoir
-	 * si il peut capturer des deux sens. Il prends aussi en paramètres la dernière destination afin d'éviter toute
-	 * répétition.
-	 * @param pawn
-	 * @param isKing
-	 * @param lastDestination
-	 * @return
+	 * Liste les prises maximales possibles depuis une case, en prenant en compte les prises multiples.
+	 * Prends en compte le fait que ce soit un roi ou non afin de savoir si il peut capturer des deux sens.
+	 * L'exploration est itérative, avec une pile explicite des sauts en cours ({@link #captureStack}),
+	 * et un masque des pions déjà capturés ({@link #capturedSquares}) : un pion ne peut pas être pris deux fois,
+	 * et la case de départ est considérée comme libre. Chaque séquence de sauts maximale est ajoutée une seule fois.
+	 * Le plateau n'est pas modifié, et aucun objet n'est alloué (en dehors du premier appel).
+	 * Une séquence compte au plus autant de sauts que l'adversaire a de pions ({@link DraughtsMove#maxJumps(int)}) :
+	 * au-delà de {@link DraughtsMove#MAX_PACKED_JUMPS} sauts, elle prend un code étendu, elle n'est jamais tronquée.
+	 * @param moves Le tampon des codes de coups, complété par les prises trouvées
+	 * @param from La case du pion qui capture
+	 * @param isKing Si le pion est une dame (prises dans les quatre directions)
+	 * @return true si au moins une prise est possible depuis <code>from</code>
 	 */
-	List<Integer> listeDestinationsSautsPossiblesDepuisCase(int pawn, boolean isKing, int lastDestination) {
-		ArrayList<Integer> dest = new ArrayList<>();
-		// check if the player is white so that it goes to the right direction
-		if (playerId.equals(PlayerId.ONE)) { //White
-			int upLeft = board.neighborUpLeft(pawn);
-			int upRight = board.neighborUpRight(pawn);
-			//check if the upleft neighbour is black and that the pawn can take it
-			//System.out.println(upLeft);
-			//System.out.println(upRight);
-			if (upLeft > 0 && board.neighborUpLeft(upLeft) > 0 && board.isBlack(upLeft) && board.isEmpty(board.neighborUpLeft(upLeft))) {
-				if (board.neighborUpLeft(upLeft) != lastDestination)
-					dest.add(board.neighborUpLeft(upLeft));
-			}
-			//check if the upright neighbour is black and that the pawn can take it
-			if (upRight > 0 && board.neighborUpRight(upRight) > 0 && board.isBlack(upRight) && board.isEmpty(board.neighborUpRight(upRight))) {
-				if (board.neighborUpRight(upRight) != lastDestination)
-					dest.add(board.neighborUpRight(upRight));
-			}
-			// if the pawn is a king, it can also take from the other direction
-			if (pawn > 0 && isKing) {
-				int downLeft = board.neighborDownLeft(pawn);
-				int downRight = board.neighborDownRight(pawn);
-
-				//System.out.println(downRight);
-				//System.out.println(downLeft);
+	boolean prisesPossiblesDepuisCase(MoveBuffer moves, int from, boolean isKing) {
+		if (captureStack == null) {
+			captureStack = new long[DraughtsMove.maxJumps(board.size) + 1];
+			captureNext = new int[DraughtsMove.maxJumps(board.size) + 1];
+			capturedSquares = new long[board.nbPlayableTiles() / 64 + 1];
+		}
+		// forward directions depend on the player, kings can also take backwards
+		int[] directions = myDirections();
+		int nbDirections = isKing ? 4 : 2;
+		int[][] neighbors = board.geometry.neighbors;
+		int[][] jumps = board.geometry.jumps;
 
-				if (downLeft > 0 && board.neighborDownLeft(downLeft) > 0 && board.isBlack(downLeft) && board.isEmpty(board.neighborDownLeft(downLeft))) {
-					if (board.neighborDownLeft(downLeft) != lastDestination)
-						dest.add(board.neighborDownLeft(downLeft));
-				}
-				if (downRight > 0 && board.neighborDownRight(downRight) > 0 && board.isBlack(downRight) && board.isEmpty(board.neighborDownRight(downRight))) {
-					if (board.neighborDownRight(downRight) != lastDestination)
-						dest.add(board.neighborDownRight(downRight));
+		// Each stack level holds the path code up to the current tile, and the next direction to explore
+		// (plus a flag telling that the path has been extended, so it is not maximal)
+		int depth = 0;
+		captureStack[0] = DraughtsMove.encode(board.size, from, from);
+		captureNext[0] = 0;
+		while (depth >= 0) {
+			long path = captureStack[depth];
+			int square = DraughtsMove.to(path);
+			int k = captureNext[depth] & ~CAPTURE_EXTENDED;
+			boolean pushed = false;
+			while (k < nbDirections) {
+				int direction = directions[k++];
+				int landing = jumps[direction][square];
+				if (landing == 0)
+					continue;
+				// check if the neighbour is an adversary not taken yet, and that the pawn can land after it
+				int jumped = neighbors[direction][square];
+				if (isAdversary(jumped) && !isCaptured(jumped) && (board.isEmpty(landing) || landing == from)) {
+					captureNext[depth] = k | CAPTURE_EXTENDED;
+					setCaptured(jumped);
+					depth++;
+					captureStack[depth] = DraughtsMove.encodeJump(path, direction, landing);
+					captureNext[depth] = 0;
+					pushed = true;
+					break;
 				}
 			}
+			if (pushed)
+				continue;
+			// All directions explored: pop the jump, adding the path if it could not be extended
+			if (depth > 0) {
+				if ((captureNext[depth] & CAPTURE_EXTENDED) == 0)
+					moves.add(path);
+				long parent = captureStack[depth - 1];
+				clearCaptured(neighbors[DraughtsMove.jumpDirection(path, depth - 1)][DraughtsMove.to(parent)]);
+			}
+			depth--;
 		}
-		// check if the player is black so that it goes to the right direction
-		if (playerId.equals(PlayerId.TWO)) {
-			int downLeft = board.neighborDownLeft(pawn);
-			int downRight = board.neighborDownRight(pawn);
+		return (captureNext[0] & CAPTURE_EXTENDED) != 0;
+	}
 
-			//System.out.println(downRight);
-			//System.out.println(downLeft);
+	/**
+	 * Check if a pawn has already been taken by the capture being explored
+	 * @param square Tile number
+	 * @return
+	 */
+	boolean isCaptured(int square) {
+		return (capturedSquares[square >>> 6] & (1L << square)) != 0;
+	}
 
-			if (downLeft > 0 && board.neighborDownLeft(downLeft) > 0 && board.isWhite(downLeft) && board.isEmpty(board.neighborDownLeft(downLeft))) {
-				if (board.neighborDownLeft(downLeft) != lastDestination)
-					dest.add(board.neighborDownLeft(downLeft));
-			}
-			if (downRight > 0 && board.neighborDownRight(downRight) > 0 &&  board.isWhite(downRight) && board.isEmpty(board.neighborDownRight(downRight))) {
-				if (board.neighborDownRight(downRight) != lastDestination)
-					dest.add(board.neighborDownRight(downRight));
-			}
+	/**
+	 * Mark a pawn as taken by the capture being explored
+	 * @param square Tile number
+	 */
+	void setCaptured(int square) {
+		capturedSquares[square >>> 6] |= 1L << square;
+	}
 
-			if (pawn > 0 && isKing) {
-				int upLeft = board.neighborUpLeft(pawn);
-				int upRight = board.neighborUpRight(pawn);
-				if (upLeft > 0 && board.neighborUpLeft(upLeft) > 0 && board.isWhite(upLeft) && board.isEmpty(board.neighborUpLeft(upLeft))) {
-					if (board.neighborUpLeft(upLeft) != lastDestination)
-						dest.add(board.neighborUpLeft(upLeft));
-				}
-				if (upRight > 0 && board.neighborUpRight(upRight) > 0 && board.isWhite(upRight) && board.isEmpty(board.neighborUpRight(upRight))) {
-					if (board.neighborUpRight(upRight) != lastDestination)
-						dest.add(board.neighborUpRight(upRight));
-				}
-			}
-		}
-		return dest;
+	/**
+	 * Unmark a pawn taken by the capture being explored
+	 * @param square Tile number
+	 */
+	void clearCaptured(int square) {
+		capturedSquares[square >>> 6] &= ~(1L << square);
 	}
 
 	/**
-	 * Liste les prisees possibles depuis une case en prenant en compte les prises multiples
-	 * @param square
-	 * @param isKing
-	 * @param lastDestination
-	 * @return
+	 * Get the list of possible moves. The list is generated once per game state, and is immutable.
 	 */
-	List<DraughtsMove> prisesPossiblesDepuisCase(int square, boolean isKing, int lastDestination, int iteration) {
-		List<DraughtsMove> moves = new ArrayList<>();
-		List<Integer> destSauts = listeDestinationsSautsPossiblesDepuisCase(square, isKing, lastDestination);
-		//System.out.println(destSauts.size());
-		for (int dest : destSauts) {
-			List<DraughtsMove> movesPrisesDest = new ArrayList<>();
-			if (iteration <10)
-				movesPrisesDest = prisesPossiblesDepuisCase(dest, isKing, square, iteration+1);
-			if (movesPrisesDest.isEmpty()) {
-				DraughtsMove move = new DraughtsMove();
-				move.add(square);
-				move.add(dest);
-				moves.add(move);
-			} else {
-				for (DraughtsMove moveDest : movesPrisesDest) {
-					DraughtsMove move = new DraughtsMove();
-					move.add(square);
-					move.add(dest);
-					for (int i = 1; i<moveDest.size(); ++i)
-						move.add(moveDest.get(i));
-					moves.add(move);
-				}
-			}
-		}
-		return moves;
+	@Override
+	public List<Move> possibleMoves() {
+		if (cachedMoves == null)
+			cachedMoves = Collections.unmodifiableList(computePossibleMoves());
+		return cachedMoves;
 	}
 
 	/**
@@ -292,115 +599,71 @@ public class EnglishDraughts extends Game {
 	 * - first check moves with captures
 	 * - if no capture possible, return displacement moves
 	 */
+	ArrayList<Move> computePossibleMoves() {
+		MoveBuffer codes = new MoveBuffer();
+		int nbMoves = generateMoves(codes);
+		ArrayList<Move> moves = new ArrayList<>(nbMoves);
+		for (int i = 0; i < nbMoves; ++i) {
+			moves.add(new DraughtsMove(codes.get(i)));
+		}
+		return moves;
+	}
+
+	/**
+	 * Generate the codes of the possible moves (see {@link DraughtsMove}), without allocation:
+	 * - first check moves with captures
+	 * - if no capture possible, add displacement moves
+	 */
 	@Override
-	public List<Move> possibleMoves() {
-		//
-		// TODO generate the list of possible moves
-		//
-		// Advice: 
-		// create two auxiliary functions :
-		// - one for jump moves from a given position, with capture (and multi-capture).
-		//    Use recursive calls to explore all multiple capture possibilities
-		// - one function that returns the displacement moves from a given position (without capture)
-		//
-		ArrayList<Move> moves = new ArrayList<>();
-
-		ArrayList<Move> possibleCaptureMoves = new ArrayList<>();
-		for(int i = 0; i< myPawns().size(); i++) {
-			int current = myPawns().get(i);
-			List<DraughtsMove> possibleCaptures = prisesPossiblesDepuisCase(current, board.isKing(current), -1, 0);
-			if (!possibleCaptures.isEmpty()) {
-				//System.out.println();
-				possibleCaptureMoves.addAll(possibleCaptures);
+	public int generateMoves(MoveBuffer moves) {
+		moves.clear();
+		if (cachedMoves != null) {
+			for (Move move : cachedMoves) {
+				moves.add(((DraughtsMove) move).code);
 			}
+			return moves.size();
 		}
-
-		moves.addAll(possibleCaptureMoves);
-		if(moves.isEmpty()) {
-			moves.addAll(possibleMovesWithoutCapture());
+		for (int current = nextPawn(1); current != 0; current = nextPawn(current + 1)) {
+			prisesPossiblesDepuisCase(moves, current, board.isKing(current));
 		}
-		return moves;
+		if (moves.isEmpty()) {
+			addMovesWithoutCapture(moves);
+		}
+		return moves.size();
 	}
 
+	@Override
+	public Move decodeMove(long code) {
+		return new DraughtsMove(code);
+	}
 
 	public ArrayList<Move> possibleMovesWithoutCapture(){
-		ArrayList<Move> moves = new ArrayList<>();
-		ArrayList<Integer> myPawns = myPawns();
-		//Les pions sont blancs
-		if(playerId.equals(PlayerId.ONE)){ //WHITE
-			for(int i = 0; i< myPawns.size(); i++) {
-				int current = myPawns.get(i);
-					int upLeft = board.neighborUpLeft(current);
-					int upRight = board.neighborUpRight(current);
-					if (upLeft != 0 && board.isEmpty(upLeft)) {
-						DraughtsMove move1 = new DraughtsMove();
-						move1.add(current);
-						move1.add(upLeft);
-						moves.add(move1);
-					}
-					if (upRight != 0 && board.isEmpty(upRight)) {
-						DraughtsMove move1 = new DraughtsMove();
-						move1.add(current);
-						move1.add(upRight);
-						moves.add(move1);
-					}
-					if (board.isKing(current)) {//WhiteKing
-						int downLeft = board.neighborDownLeft(current);
-						int downRight = board.neighborDownRight(current);
-						if (downLeft != 0 && board.isEmpty(downLeft)) {
-							DraughtsMove move1 = new DraughtsMove();
-							move1.add(current);
-							move1.add(downLeft);
-							moves.add( move1);
-						}
-						if (downRight != 0 && board.isEmpty(downRight)) {
-							DraughtsMove move1 = new DraughtsMove();
-							move1.add(current);
-							move1.add(downRight);
-							moves.add( move1);
-						}
-				}
-			}
+		MoveBuffer codes = new MoveBuffer();
+		addMovesWithoutCapture(codes);
+		ArrayList<Move> moves = new ArrayList<>(codes.size());
+		for (int i = 0; i < codes.size(); ++i) {
+			moves.add(new DraughtsMove(codes.get(i)));
 		}
-		else { //BLACK
-			for(int i = 0; i< myPawns.size(); i++) {
-				int current = myPawns.get(i);
-				int downLeft = board.neighborDownLeft(current);
-				int downRight = board.neighborDownRight(current);
-				if (downLeft != 0 && board.isEmpty(downLeft)) {
-					DraughtsMove move1 = new DraughtsMove();
-					move1.add(current);
-					move1.add(downLeft);
-					moves.add( move1);
-				}
-				if (downRight != 0 && board.isEmpty(downRight)) {
-					DraughtsMove move1 = new DraughtsMove();
-					move1.add(current);
-					move1.add(downRight);
-					moves.add(move1);
-				}
-				if (board.isKing(current)) {//WhiteKing
-					int upLeft = board.neighborUpLeft(current);
-					int upRight = board.neighborUpRight(current);
-					if (upLeft != 0 && board.isEmpty(upLeft)) {
-						DraughtsMove move1 = new DraughtsMove();
-						move1.add(current);
-						move1.add(upLeft);
-						moves.add(move1);
-					}
-					if (upRight != 0 && board.isEmpty(upRight)) {
-						DraughtsMove move1 = new DraughtsMove();
-						move1.add(current);
-						move1.add(upRight);
-						moves.add(move1);
-					}
+		return moves;
+	}
+
+	/**
+	 * Add the codes of the displacement moves (without capture) of the current player
+	 * @param moves The buffer where to add the move codes
+	 */
+	void addMovesWithoutCapture(MoveBuffer moves) {
+		// forward directions depend on the player, kings can also move backwards
+		int[] directions = myDirections();
+		int[][] neighbors = board.geometry.neighbors;
+		for (int current = nextPawn(1); current != 0; current = nextPawn(current + 1)) {
+			int nbDirections = board.isKing(current) ? 4 : 2;
+			for (int k = 0; k < nbDirections; ++k) {
+				int destination = neighbors[directions[k]][current];
+				if (destination != 0 && board.isEmpty(destination)) {
+					moves.add(DraughtsMove.encode(board.size, current, destination));
 				}
 			}
-
 		}
-
-
-		return moves;
 	}
 
 	@Override
@@ -408,66 +671,160 @@ public class EnglishDraughts extends Game {
 		// Player should be valid
 		if (playerId == PlayerId.NONE)
 			return;
-		// We will cast Move to DraughtsMove (kind of ArrayList<Integer>
+		// We will cast Move to DraughtsMove (packed move code)
 		if (!(aMove instanceof DraughtsMove))
 			return;
+		// Only valid moves are played (and recorded in the history)
+		if (!isValid((DraughtsMove) aMove))
+			return;
+		playUnchecked(aMove);
+	}
+
+	/**
+	 * Check if a move can be played in the current state, with a hash lookup in the valid move codes
+	 * @param move The move to check
+	 * @return <code>true</code> if the move is in {@link #possibleMoves()}
+	 */
+	boolean isValid(DraughtsMove move) {
+		if (!validMovesUpToDate) {
+			if (validMoves == null)
+				validMoves = new MoveCodeSet();
+			validMoves.clear();
+			for (Move possibleMove : possibleMoves()) {
+				validMoves.add(((DraughtsMove) possibleMove).code);
+			}
+			validMovesUpToDate = true;
+		}
+		return validMoves.contains(move.code);
+	}
+
+	/**
+	 * Forget the possible moves of the previous state (to be called on each state change)
+	 */
+	void clearMoveCache() {
+		cachedMoves = null;
+		validMovesUpToDate = false;
+	}
+
+	@Override
+	public void playUnchecked(Move aMove) {
 		// Cast and apply the move
-		DraughtsMove move = (DraughtsMove) aMove;
+		playUnchecked(((DraughtsMove) aMove).code);
+	}
 
-		// Move pawn and capture opponents
-		List<Move> possibleMoves = possibleMoves();
+	@Override
+	public void playUnchecked(long code) {
+		clearMoveCache();
+		int from = DraughtsMove.from(code);
+		int to = DraughtsMove.to(code);
 
+		// Move pawn and capture opponents
 		boolean captured = false;
-		int current = board.get(move.get(0));
-		boolean isKing = board.isKing(move.get(0));
-
-		if (possibleMoves.contains(move)) {
-			board.set(move.get(0), CheckerBoard.EMPTY);
-			if (isKing && playerId == PlayerId.ONE)
-				board.set(move.get(move.size()-1), CheckerBoard.WHITE_KING);
-			else if (isKing && playerId == PlayerId.TWO)
-				board.set(move.get(move.size()-1), CheckerBoard.BLACK_KING);
-			else board.set(move.get(move.size()-1), (byte)current);
-			//capture
-			for (int i = 1; i<move.size(); ++i) {
-				if (board.neighborDownRight(board.neighborDownRight(move.get(i-1))) == move.get(i)) {
-					board.set(board.neighborDownRight(move.get(i-1)), CheckerBoard.EMPTY);
-					captured = true;
-				}
-				if (board.neighborDownLeft(board.neighborDownLeft(move.get(i-1))) == move.get(i)) {
-					board.set(board.neighborDownLeft(move.get(i-1)), CheckerBoard.EMPTY);
-					captured = true;
-				}
-				if (board.neighborUpRight(board.neighborUpRight(move.get(i-1))) == move.get(i)) {
-					board.set(board.neighborUpRight(move.get(i-1)), CheckerBoard.EMPTY);
-					captured = true;
-				}
-				if (board.neighborUpLeft(board.neighborUpLeft(move.get(i-1))) == move.get(i)) {
-					board.set(board.neighborUpLeft(move.get(i-1)), CheckerBoard.EMPTY);
-					captured = true;
-				}
-			}
+		int current = board.get(from);
+		boolean isKing = board.isKing(from);
+		long undoInfo = nbKingMovesWithoutCapture & 0xFFFFFFFFL;
 
+		board.set(from, CheckerBoard.EMPTY);
+		board.set(to, (byte)current);
+		//capture: follow the jumps of the path
+		int[][] neighbors = board.geometry.neighbors;
+		int[][] jumps = board.geometry.jumps;
+		int square = from;
+		for (int i = 0; i < DraughtsMove.nbJumps(code); ++i) {
+			int direction = DraughtsMove.jumpDirection(code, i);
+			int jumped = neighbors[direction][square];
+			if (board.isKing(jumped))
+				undoInfo |= 1L << (UNDO_CAPTURED_KING_SHIFT + i);
+			board.set(jumped, CheckerBoard.EMPTY);
+			square = jumps[direction][square];
+			captured = true;
 		}
 
+		// Keep track of successive moves with kings wthout capture
 		if (!captured && isKing) {
 			nbKingMovesWithoutCapture++;
 		}
 		else nbKingMovesWithoutCapture = 0;
 
 		// Promote to king if the pawn ends on the opposite of the board
-		int finMovement = move.get(move.size() - 1);
-		if (board.inTopRow(finMovement) && playerId.equals(playerId.ONE)) board.set(finMovement,CheckerBoard.WHITE_KING);
-		if (board.inBottomRow(finMovement) && playerId.equals(playerId.TWO)) board.set(finMovement,CheckerBoard.BLACK_KING);
+		if (!isKing && ((board.inTopRow(to) && playerId == PlayerId.ONE) || (board.inBottomRow(to) && playerId == PlayerId.TWO))) {
+			board.crownPawn(to);
+			undoInfo |= UNDO_PROMOTED;
+		}
+
+		// Record the move for unplay()
+		if (historySize == history.length)
+			history = Arrays.copyOf(history, 2 * history.length);
+		history[historySize++] = code;
+		history[historySize++] = undoInfo;
 		
 		// Next player
-		if(player().equals(playerId.ONE)) playerId = playerId.TWO;
-		else playerId = playerId.ONE;
+		playerId = playerId.other();
 		
 		// Update nbTurn
 		nbTurn++;
-		
-		// Keep track of successive moves with kings wthout capture
+	}
+
+	@Override
+	public void unplay() {
+		assert historySize > 0 : "No move to unplay";
+		clearMoveCache();
+		long undoInfo = history[--historySize];
+		long code = history[--historySize];
+		int from = DraughtsMove.from(code);
+		int to = DraughtsMove.to(code);
+
+		// Previous player and counters
+		playerId = playerId.other();
+		nbTurn--;
+		nbKingMovesWithoutCapture = (int) undoInfo;
+
+		// Move the pawn back (uncrowned if it was promoted by the move)
+		byte pawn = board.get(to);
+		if ((undoInfo & UNDO_PROMOTED) != 0)
+			pawn = (playerId == PlayerId.ONE) ? CheckerBoard.WHITE_CHECKER : CheckerBoard.BLACK_CHECKER;
+		board.set(to, CheckerBoard.EMPTY);
+		board.set(from, pawn);
+
+		// Put the captured pawns back
+		byte checker = (playerId == PlayerId.ONE) ? CheckerBoard.BLACK_CHECKER : CheckerBoard.WHITE_CHECKER;
+		byte king = (playerId == PlayerId.ONE) ? CheckerBoard.BLACK_KING : CheckerBoard.WHITE_KING;
+		int[][] neighbors = board.geometry.neighbors;
+		int[][] jumps = board.geometry.jumps;
+		int square = from;
+		for (int i = 0; i < DraughtsMove.nbJumps(code); ++i) {
+			int direction = DraughtsMove.jumpDirection(code, i);
+			boolean wasKing = (undoInfo & (1L << (UNDO_CAPTURED_KING_SHIFT + i))) != 0;
+			board.set(neighbors[direction][square], wasKing ? king : checker);
+			square = jumps[direction][square];
+		}
+	}
+
+	/**
+	 * Check if the current player can move, stopping at the first possible displacement or capture.
+	 * Uses the cached list of possible moves if it was already generated.
+	 */
+	@Override
+	public boolean hasAnyLegalMove() {
+		if (cachedMoves != null)
+			return !cachedMoves.isEmpty();
+		int[] directions = myDirections();
+		int[][] neighbors = board.geometry.neighbors;
+		int[][] jumps = board.geometry.jumps;
+		for (int pawn = nextPawn(1); pawn != 0; pawn = nextPawn(pawn + 1)) {
+			int nbDirections = board.isKing(pawn) ? 4 : 2;
+			for (int k = 0; k < nbDirections; ++k) {
+				int neighbor = neighbors[directions[k]][pawn];
+				if (neighbor == 0)
+					continue;
+				if (board.isEmpty(neighbor))
+					return true;
+				int landing = jumps[directions[k]][pawn];
+				if (landing != 0 && isAdversary(neighbor) && board.isEmpty(landing))
+					return true;
+			}
+		}
+		return false;
 	}
 
 	@Override
@@ -485,7 +842,7 @@ public class EnglishDraughts extends Game {
 	@Override
 	public PlayerId winner() {
 		// return the winner ID if possible
-		if (possibleMoves().isEmpty()) {
+		if (!hasAnyLegalMove()) {
 			if (playerId == PlayerId.ONE)
 				return PlayerId.TWO;
 			return PlayerId.ONE;
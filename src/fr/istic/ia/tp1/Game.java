@@ -55,6 +55,42 @@ public abstract class Game implements Cloneable {
 	 */
 	public abstract List<Move> possibleMoves();
 	
+	/**
+	 * Write the codes of all possible moves from the current state into a reusable buffer,
+	 * in the same order as {@link Game#possibleMoves()}. The codes can be played with {@link Game#playUnchecked(long)}
+	 * and converted to moves with {@link Game#decodeMove(long)}.
+	 * Implementations should not allocate any object, so that the search algorithms can play without garbage.
+	 * The default implementation uses the index of each move in {@link Game#possibleMoves()} as its code.
+	 * @param moves The buffer to fill, cleared first
+	 * @return The number of possible moves
+	 */
+	public int generateMoves(MoveBuffer moves) {
+		moves.clear();
+		int nbMoves = possibleMoves().size();
+		for (int i = 0; i < nbMoves; ++i) {
+			moves.add(i);
+		}
+		return nbMoves;
+	}
+
+	/**
+	 * Get the move represented by a code of {@link Game#generateMoves(MoveBuffer)} in the current state
+	 * @param code A move code generated in the current state
+	 * @return The corresponding move, equal to the one in {@link Game#possibleMoves()}
+	 */
+	public Move decodeMove(long code) {
+		return possibleMoves().get((int) code);
+	}
+
+	/**
+	 * Check if the current player has at least one possible move.
+	 * Implementations should stop at the first possible move instead of generating them all.
+	 * @return <code>true</code> if {@link Game#possibleMoves()} is not empty
+	 */
+	public boolean hasAnyLegalMove() {
+		return !possibleMoves().isEmpty();
+	}
+	
 	/**
 	 * Play the provided move on the current game state. 
 	 * The game state is updated and the game switches to next player.  
@@ -62,6 +98,32 @@ public abstract class Game implements Cloneable {
 	 */
 	public abstract void play(Move move);
 	
+	/**
+	 * Play a move already known to be valid, i.e. taken from {@link Game#possibleMoves()} in the current state.
+	 * Implementations may skip the validity checks of {@link Game#play(Move)}, so this is the entry point
+	 * for search algorithms and rollouts. The behavior is undefined for any other move.
+	 * @param move A move returned by {@link Game#possibleMoves()} for the current state.
+	 */
+	public void playUnchecked(Move move) {
+		play(move);
+	}
+
+	/**
+	 * Play a move given by its code, as generated by {@link Game#generateMoves(MoveBuffer)} in the current state.
+	 * Like {@link Game#playUnchecked(Move)}, the code is trusted, and the move can be undone with {@link Game#unplay()}.
+	 * @param code A move code generated in the current state
+	 */
+	public void playUnchecked(long code) {
+		playUnchecked(decodeMove(code));
+	}
+
+	/**
+	 * Undo the last move played with {@link Game#play(Move)}, restoring exactly the previous game state
+	 * (board, current player and counters). Successive calls undo the moves in reverse order.
+	 * Only the moves played on this object since its creation (or cloning) can be undone.
+	 */
+	public abstract void unplay();
+	
 	/**
 	 * Get the PlayerID of the current player
 	 * @return The PlayerId of the current player
@@ -78,6 +140,26 @@ public abstract class Game implements Cloneable {
 	@Override
 	public abstract Game clone();
 	
+	/**
+	 * Get the 64-bit Zobrist key of the current state: the XOR of random keys of the features of the state
+	 * (pieces placement, player to move...), updated in constant time by {@link Game#play(Move)} and {@link Game#unplay()}.
+	 * Games in the same state (see {@link Game#sameState(Game)}) have the same key, whatever the moves played to reach it,
+	 * so the key can index the caches of game states (with rare collisions between different states).
+	 * @return The key of the current state
+	 */
+	public abstract long hashKey();
+	
+	/**
+	 * Check if another game is in the same state as this one, i.e. the same position, player to move and counters,
+	 * whatever the moves played to reach it. Used by the searches to find a known state in their tree.
+	 * The default implementation never matches.
+	 * @param other Another game, possibly of another class
+	 * @return <code>true</code> if both games are in the same state
+	 */
+	public boolean sameState(Game other) {
+		return false;
+	}
+	
 	/**
 	 * Get an ASCII-art representation of the game state
 	 * @return a string containing an ASCII art view of the the game
@@ -88,6 +88,36 @@ public class MainGameLoop {
 		list.add( new NamedSupplier<Player>("MCTS 2 s",  () -> new PlayerMCTS(2000))   );
 		list.add( new NamedSupplier<Player>("MCTS 5 s",  () -> new PlayerMCTS(5000))   );
 		list.add( new NamedSupplier<Player>("MCTS 10 s", () -> new PlayerMCTS(10000))  );
+		list.add( new NamedSupplier<Player>("MCTS 20000 playouts", () -> {
+			PlayerMCTS player = new PlayerMCTS();
+			player.setPlayoutBudget(20000);
+			return player;
+		}) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s of CPU time", () -> {
+			PlayerMCTS player = new PlayerMCTS();
+			player.setCpuTimeBudget(1000);
+			return player;
+		}) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, pondering", () -> {
+			PlayerMCTS player = new PlayerMCTS(1000);
+			player.setPondering(true);
+			return player;
+		}) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, transpositions", () -> {
+			PlayerMCTS player = new PlayerMCTS(1000);
+			player.setTranspositionTableSize(1 << 20);
+			return player;
+		}) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, all cores (root-parallel)", () -> new PlayerMCTS(1000, Runtime.getRuntime().availableProcessors())) );
+		list.add( new NamedSupplier<Player>("MCTS 5 s, all cores (root-parallel)", () -> new PlayerMCTS(5000, Runtime.getRuntime().availableProcessors())) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, all cores (root-parallel, shared table)", () -> {
+			PlayerMCTS player = new PlayerMCTS(1000, Runtime.getRuntime().availableProcessors());
+			player.setSharedTable(new SharedTranspositionTable(64));
+			return player;
+		}) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, all cores (shared tree)", () -> new PlayerMCTS(1000, Runtime.getRuntime().availableProcessors(), PlayerMCTS.Parallelism.TREE)) );
+		list.add( new NamedSupplier<Player>("MCTS 5 s, all cores (shared tree)", () -> new PlayerMCTS(5000, Runtime.getRuntime().availableProcessors(), PlayerMCTS.Parallelism.TREE)) );
+		list.add( new NamedSupplier<Player>("MCTS 1 s, all cores (parallel playouts)", () -> new PlayerMCTS(1000, Runtime.getRuntime().availableProcessors(), PlayerMCTS.Parallelism.LEAF)) );
 		
 		System.out.println("Select player type for " + name + ":");
 		return chooseInList(list).get();
@@ -100,6 +130,7 @@ public class MainGameLoop {
 	static Game chooseAndCreateGame() {
 		ArrayList<NamedSupplier<Game>> list = new ArrayList<NamedSupplier<Game>>();
 		list.add( new NamedSupplier<Game>("English Draughts (8x8)",    () -> new EnglishDraughts())   );
+		list.add( new NamedSupplier<Game>("English Draughts (8x8, bitboards)", () -> new BitboardDraughts()) );
 		list.add( new NamedSupplier<Game>("English Draughts on 10x10", () -> new EnglishDraughts(10)) );
 		list.add( new NamedSupplier<Game>("English Draughts on 6x6",   () -> new EnglishDraughts(6))  );
 		list.add( new NamedSupplier<Game>("TicTacToe",   () -> new TicTacToe())  );
@@ -146,6 +177,8 @@ public class MainGameLoop {
 			// Exit if something went wrong
 			if (move == null) {
 				System.out.println("Error, " + game.playerName(game.player())+  " cannot play. Abort.");
+				player1.gameOver(game);
+				player2.gameOver(game);
 				return;
 			}
 
@@ -157,6 +190,10 @@ public class MainGameLoop {
 			game.play(move);
 		}
 		
+		// Let the players stop their background work
+		player1.gameOver(game);
+		player2.gameOver(game);
+		
 		// Display the winner
 		System.out.println(game.view());
 		System.out.println(game.playerName(game.winner()) + " wins!");
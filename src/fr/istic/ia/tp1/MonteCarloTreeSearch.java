@@ -1,9 +1,9 @@
 package fr.istic.ia.tp1;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Random;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 import java.util.concurrent.TimeUnit;
 
 import fr.istic.ia.tp1.Game.Move;
@@ -11,71 +11,25 @@ import fr.istic.ia.tp1.Game.PlayerId;
 
 /**
  * A class implementing a Monte-Carlo Tree Search method (MCTS) for playing two-player games ({@link Game}).
+ * The tree is stored in a {@link NodeArena}: a node is an index, and the children of a node are a contiguous block
+ * of nodes. The moves of a node are generated once, and its children are added one per visit, in random order.
+ * The number of nodes is bounded by a budget: when it is reached, the subtrees of the least visited nodes are pruned,
+ * their statistics staying in their root (see {@link #setNodeBudget(int)}). The statistics of a node are seen from the player who played the move leading to the node,
+ * so that the UCT selection and the choice of the best move maximize the wins of the player choosing.
+ *
+ * With a transposition table ({@link #setTranspositionTableSize(int)}), the search is a graph: a game state reached
+ * by several move orders has its moves expanded once, in the node which reached it first. The other nodes of the state
+ * stay leaves, and the selection goes on from the expanded node, so the statistics of its children are shared.
+ * A node still holds the statistics of the playouts through its own move, which are updated along the path actually taken.
+ *
+ * Several searches (e.g. the trees of a root-parallel search) can share their results through a {@link SharedTranspositionTable}
+ * ({@link #setSharedTable(SharedTranspositionTable)}): the results of each move are added to the table, and the selection
+ * uses the results of all the searches when the table has more visits than the tree.
  * @author vdrevell
  *
  */
-public class MonteCarloTreeSearch {
+public class MonteCarloTreeSearch implements TreeSearch {
 
-	/**
-	 * A class to represent an evaluation node in the MCTS tree.
-	 * This is a member class so that each node can access the global statistics of the owning MCTS.
-	 * @author vdrevell
-	 *
-	 */
-	class EvalNode {
-		/** The number of simulations run through this node */
-		int n;
-		
-		/** The number of winning runs */
-		double w;
-		
-		/** The game state corresponding to this node */
-		Game game;
-		
-		/** The children of the node: the games states accessible by playing a move from this node state */
-		ArrayList<EvalNode> children;
-
-		
-		/** 
-		 * The only constructor of EvalNode.
-		 * @param game The game state corresponding to this node.
-		 */
-		EvalNode(Game game) {
-			this.game = game;
-			children = new ArrayList<EvalNode>();
-			w = 0.0;
-			n = 0;
-		}
-		
-		/**
-		 * Compute the Upper Confidence Bound for Trees (UCT) value for the node.
-		 * @return UCT value for the node
-		 */
-		double uct() {
-			if (n==0) return Integer.MAX_VALUE;
-			else return (w / (double) n) + 1.4142 * Math.sqrt(Math.log(nTotal) / (double) n);
-		}
-		
-		/**
-		 * "Score" of the node, i.e estimated probability of winning when moving to this node
-		 * @return Estimated probability of win for the node
-		 */
-		double score() {
-			if (n==0) return Integer.MAX_VALUE;
-			return (w/n);
-		}
-		
-		/**
-		 * Update the stats (n and w) of the node with the provided rollout results
-		 * @param res
-		 */
-		void updateStats(RolloutResults res) {
-			this.n = res.nbSimulations();
-			//TODO A verifier
-			this.w = res.nbWins(game.player());
-		}
-	}
-	
 	/**
 	 * A class to hold the results of the rollout phase
 	 * Keeps the number of wins for each player and the number of simulations.
@@ -156,14 +110,117 @@ public class MonteCarloTreeSearch {
 	}
 	
 	/**
-	 * The root of the MCTS tree
+	 * The index of the root in {@link #tree}
+	 */
+	static final int ROOT = 0;
+	
+	/**
+	 * The nodes of the MCTS tree
+	 */
+	NodeArena tree = new NodeArena();
+	
+	/**
+	 * A second arena, which receives the retained nodes when the root moves down the tree or when the tree is pruned,
+	 * then is swapped with {@link #tree}
+	 */
+	NodeArena spare = new NodeArena();
+	
+	/**
+	 * For each node copied by {@link #retainSubtree(int, int)}, its index in the previous arena
+	 */
+	int[] copiedFrom = new int[0];
+	
+	/**
+	 * The maximum number of nodes of the tree (which can be exceeded by the moves of one node)
+	 */
+	int nodeBudget = defaultNodeBudget();
+	
+	/**
+	 * The number of subtrees pruned to stay within {@link #nodeBudget}
+	 */
+	long nbEvictions;
+	
+	/**
+	 * The expanded node of each game state, <code>null</code> to search a tree without transpositions
+	 */
+	NodeTable transpositions;
+	
+	/**
+	 * The number of times the selection went on from the node of a transposed state
+	 */
+	long nbTranspositions;
+	
+	/**
+	 * The results shared with other searches, <code>null</code> if the search is not shared
+	 */
+	SharedTranspositionTable sharedTable;
+	
+	/**
+	 * The nodes visited by the current MCTS step, from the root
 	 */
-	EvalNode root;
+	int[] path = new int[64];
+	
+	/**
+	 * The keys of the game states of the nodes of {@link #path}, only with a {@link #sharedTable}
+	 */
+	long[] pathKeys = new long[64];
+	
+	/**
+	 * The visits and wins of the children of the selected node, from the tree or the {@link #sharedTable}
+	 */
+	int[] childVisits = new int[16];
+	double[] childWins = new double[16];
+	
+	/**
+	 * The game state of the root. This single mutable state is walked up and down the tree
+	 * with {@link Game#play(Move)} and {@link Game#unplay()}, it is back to the root state between two MCTS steps.
+	 */
+	Game game;
 	
 	/**
 	 * The total number of performed simulations (rollouts)
 	 */
 	int nTotal;
+	
+	/**
+	 * The move buffer reused by the rollouts
+	 */
+	final MoveBuffer rolloutMoves = new MoveBuffer();
+	
+	/**
+	 * The random generator of the search (expansions and rollouts), owned by the thread running the search
+	 */
+	final SplittableRandom random;
+	
+	/**
+	 * The executor running a batch of parallel playouts from each new leaf, <code>null</code> to run a single playout
+	 */
+	RolloutExecutor rolloutExecutor;
+	
+	/**
+	 * Whether the playouts stop at the deadline of the search (hard deadline mode), see {@link #setInterruptibleRollouts(boolean)}
+	 */
+	boolean interruptibleRollouts;
+	
+	/**
+	 * The deadline of the running search, given by {@link System#nanoTime()} (far away outside of {@link #evaluateTreeUntil(long)})
+	 */
+	long deadlineNanos = noDeadline();
+	
+	/**
+	 * The number of playouts aborted at the deadline, whose results are not counted
+	 */
+	long nbAbortedPlayouts;
+	
+	/**
+	 * Number of plies between two checks of the deadline in the interruptible playouts
+	 */
+	static final int DEADLINE_CHECK_PERIOD = 32;
+	
+	/**
+	 * Set by another thread to stop the running search, cleared when the search restarts from a new root
+	 */
+	volatile boolean stopRequested;
 
 	
 	/**
@@ -171,10 +228,293 @@ public class MonteCarloTreeSearch {
 	 * @param game
 	 */
 	public MonteCarloTreeSearch(Game game) {
-		root = new EvalNode(game.clone());
+		this(game, new SplittableRandom());
+	}
+	
+	/**
+	 * Constructor with a given random generator, e.g. split from the generator of another search
+	 * @param game
+	 * @param random The random generator used by this search only
+	 */
+	public MonteCarloTreeSearch(Game game, SplittableRandom random) {
+		this(game, random, null);
+	}
+	
+	/**
+	 * Constructor with a given random generator and leaf-parallel rollouts
+	 * @param game
+	 * @param random The random generator used by this search only
+	 * @param rolloutExecutor The executor of the playouts from each new leaf, <code>null</code> to run a single playout
+	 */
+	public MonteCarloTreeSearch(Game game, SplittableRandom random, RolloutExecutor rolloutExecutor) {
+		this.rolloutExecutor = rolloutExecutor;
+		this.game = game.clone();
+		this.random = random;
+		tree.allocate(1);
 		nTotal = 0;
 	}
 	
+	/**
+	 * Restart the search from a new game state, e.g. for the next move of a game.
+	 * The nodes of the previous tree are dropped, but the memory of the arena is kept.
+	 * @param game The new root game state (copied)
+	 */
+	public void reset(Game game) {
+		this.game = game.clone();
+		tree.clear();
+		tree.allocate(1);
+		if (transpositions != null)
+			transpositions.clear();
+		nTotal = 0;
+		stopRequested = false;
+	}
+	
+	/**
+	 * Restart the search from a new game state, keeping the statistics of the subtree of that state when it is
+	 * the root state or one or two moves below it (e.g. our move then the reply of the opponent).
+	 * The rest of the tree is dropped, see {@link #reset(Game)} when the state is not found.
+	 * @param game The new root game state (copied)
+	 * @return <code>true</code> if the state was found in the tree
+	 */
+	public boolean advanceTo(Game game) {
+		int node = findState(game);
+		if (node < 0) {
+			reset(game);
+			return false;
+		}
+		this.game = game.clone();
+		if (node != ROOT)
+			retainSubtree(node, 0);
+		nTotal = 0;
+		stopRequested = false;
+		return true;
+	}
+	
+	/**
+	 * Look for a game state among the root and the nodes one or two moves below it
+	 * @param state The game state to find
+	 * @return The node of the state, or -1 if it is not found
+	 */
+	int findState(Game state) {
+		if (game.sameState(state))
+			return ROOT;
+		int first = tree.firstChild(ROOT);
+		for (int child = first; child < first + tree.childCount(ROOT); ++child) {
+			game.playUnchecked(tree.code(child));
+			int found = game.sameState(state) ? child : -1;
+			int firstGrandChild = tree.firstChild(child);
+			for (int grandChild = firstGrandChild; found < 0
+					&& grandChild < firstGrandChild + tree.childCount(child); ++grandChild) {
+				game.playUnchecked(tree.code(grandChild));
+				if (game.sameState(state))
+					found = grandChild;
+				game.unplay();
+			}
+			game.unplay();
+			if (found >= 0)
+				return found;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Get the default node budget: both arenas (the tree and its copy) take at most a quarter of the maximum heap size
+	 * @return The default maximum number of nodes
+	 */
+	static int defaultNodeBudget() {
+		long budget = Runtime.getRuntime().maxMemory() / 4 / (2 * NodeArena.BYTES_PER_NODE);
+		return (int) Math.min(budget, Integer.MAX_VALUE / 2);
+	}
+	
+	/**
+	 * Set the maximum number of nodes of the tree. When it is reached, the search prunes the subtrees
+	 * of the least visited nodes to get back to half the budget, so that it runs in constant memory.
+	 * The tree and its copy used for pruning take about <code>2 * maxNodes * {@link NodeArena#BYTES_PER_NODE}</code> bytes.
+	 * @param maxNodes The maximum number of nodes (at least the moves of two nodes)
+	 */
+	public void setNodeBudget(int maxNodes) {
+		nodeBudget = maxNodes;
+	}
+	
+	/**
+	 * @return The maximum number of nodes of the tree
+	 */
+	public int getNodeBudget() {
+		return nodeBudget;
+	}
+	
+	/**
+	 * @return The number of subtrees pruned since the creation of the search
+	 */
+	public long nbEvictions() {
+		return nbEvictions;
+	}
+	
+	/**
+	 * @return The number of nodes of the tree (including the slots of the untried moves)
+	 */
+	public int nbNodes() {
+		return tree.size();
+	}
+	
+	/**
+	 * Search a graph of game states instead of a tree: the moves of a state are expanded once, and the statistics
+	 * of its children are shared by all the move orders reaching it. The expanded nodes are looked up by the key
+	 * of their state ({@link Game#hashKey()}) in a bounded table, replacing the least visited ones when it is full.
+	 * The table takes 12 bytes per entry, and needs about one entry per expanded node.
+	 * @param nbEntries The maximum number of entries of the table (0 to search a tree)
+	 */
+	public void setTranspositionTableSize(int nbEntries) {
+		if (nbEntries <= 0) {
+			transpositions = null;
+			return;
+		}
+		transpositions = new NodeTable(nbEntries);
+		registerStates(ROOT);
+	}
+	
+	/**
+	 * Share the results of the search with other searches, e.g. the other trees of a root-parallel search
+	 * or the searches of the next moves. The results of the moves of each step are added to the table,
+	 * keyed by the game state and the move (see {@link SharedTranspositionTable#moveKey(long, long)}),
+	 * and the selection uses the results of the table when they have more visits than the node.
+	 * @param table The table shared by the searches, <code>null</code> to stop sharing
+	 */
+	public void setSharedTable(SharedTranspositionTable table) {
+		sharedTable = table;
+	}
+	
+	/**
+	 * @return The number of times the selection went on from the node of a transposed state
+	 */
+	public long nbTranspositions() {
+		return nbTranspositions;
+	}
+	
+	/**
+	 * Add the expanded nodes of a subtree to the transposition table
+	 * @param node The root of the subtree, reached by the current game state
+	 */
+	void registerStates(int node) {
+		if (tree.moveCount(node) == NodeArena.NOT_EXPANDED)
+			return;
+		transpositions.put(game.hashKey(), node, tree);
+		int first = tree.firstChild(node);
+		for (int child = first; child < first + tree.childCount(node); ++child) {
+			game.playUnchecked(tree.code(child));
+			registerStates(child);
+			game.unplay();
+		}
+	}
+	
+	/**
+	 * Look for the expanded node of the current game state, reached by a node which is not expanded
+	 * @return The expanded node of the state, or -1 if there is none (or no transposition table)
+	 */
+	int findTransposition() {
+		if (transpositions == null)
+			return -1;
+		int node = transpositions.get(game.hashKey());
+		if (node >= 0)
+			nbTranspositions++;
+		return node;
+	}
+	
+	/**
+	 * Prune the tree down to half the node budget. A node with less visits than a threshold loses its subtree,
+	 * and becomes a leaf keeping its statistics (which already include the results of the subtree).
+	 * As the children of a node have less visits than the node, the threshold is the lowest power of 2
+	 * for which the nodes reached by nodes with at least as many visits fit in the budget.
+	 */
+	void prune() {
+		// Number of child slots of the expanded nodes, by log2 of the number of visits (the root counting as the most visited)
+		long[] slotsByLevel = new long[32];
+		copiedFrom = ensureCapacity(copiedFrom, tree.size());
+		int head = 0;
+		int tail = 0;
+		copiedFrom[tail++] = ROOT;
+		while (head < tail) {
+			int node = copiedFrom[head++];
+			int nbMoves = tree.moveCount(node);
+			if (nbMoves <= 0)
+				continue;
+			int level = (node == ROOT) ? 31 : 31 - Integer.numberOfLeadingZeros(Math.max(tree.visits(node), 1));
+			slotsByLevel[level] += nbMoves;
+			int first = tree.firstChild(node);
+			for (int child = first; child < first + tree.childCount(node); ++child) {
+				copiedFrom[tail++] = child;
+			}
+		}
+		int level = 31;
+		long kept = 1 + slotsByLevel[31];
+		while (level > 0 && kept + slotsByLevel[level - 1] <= nodeBudget / 2) {
+			kept += slotsByLevel[--level];
+		}
+		retainSubtree(ROOT, (level == 31) ? Integer.MAX_VALUE : 1 << level);
+	}
+	
+	/**
+	 * Make a node the new root, keeping only its subtree. The subtree is copied breadth-first into {@link #spare},
+	 * which becomes the tree, so the nodes of the new tree stay packed and the previous arena is recycled.
+	 * @param node The new root
+	 * @param minVisits The minimum number of visits of a node to keep its children (except the new root)
+	 */
+	void retainSubtree(int node, int minVisits) {
+		spare.clear();
+		spare.copyNode(spare.allocate(1), tree, node);
+		copiedFrom = ensureCapacity(copiedFrom, 1);
+		copiedFrom[ROOT] = node;
+		// The nodes of the new tree are visited in allocation order, each one reserving the block of its moves
+		for (int copy = ROOT; copy < spare.size(); ++copy) {
+			int original = copiedFrom[copy];
+			// Skip the untried moves slots
+			if (original < 0)
+				continue;
+			int nbMoves = tree.moveCount(original);
+			if (nbMoves <= 0) {
+				spare.setChildren(copy, 0, nbMoves);
+				continue;
+			}
+			// Pruned node, left not expanded
+			if (copy != ROOT && tree.visits(original) < minVisits) {
+				nbEvictions++;
+				continue;
+			}
+			int first = spare.reserve(nbMoves);
+			spare.setChildren(copy, first, nbMoves);
+			copiedFrom = ensureCapacity(copiedFrom, first + nbMoves);
+			int nbChildren = tree.childCount(original);
+			for (int i = 0; i < nbMoves; ++i) {
+				int originalChild = tree.firstChild(original) + i;
+				if (i < nbChildren) {
+					spare.copyNode(spare.addChild(copy), tree, originalChild);
+					copiedFrom[first + i] = originalChild;
+				} else {
+					spare.setCode(first + i, tree.code(originalChild));
+					copiedFrom[first + i] = -1;
+				}
+			}
+		}
+		NodeArena previous = tree;
+		tree = spare;
+		spare = previous;
+		spare.clear();
+		// The nodes have moved, the table is rebuilt from the new tree
+		if (transpositions != null) {
+			transpositions.clear();
+			registerStates(ROOT);
+		}
+	}
+	
+	/**
+	 * Grow an array if it is smaller than a given size
+	 */
+	private static int[] ensureCapacity(int[] array, int size) {
+		if (array.length >= size)
+			return array;
+		return Arrays.copyOf(array, Math.max(size, 2 * array.length));
+	}
+	
 	/**
 	 * Perform a single random playing rollout from the given game state
 	 * @param game Initial game state. {@code game} will contain an ended game state when the function returns.
@@ -183,48 +523,411 @@ public class MonteCarloTreeSearch {
 	static PlayerId playRandomlyToEnd(Game game) {
 		while(game.winner() == null){
 			Player bot = new PlayerRandom();
-			game.play(bot.play(game));
+			game.playUnchecked(bot.play(game));
 		}
 		return game.winner();
 	}
 
 	/**
 	 * Perform nbRuns rollouts from a game state, and returns the winning statistics for both players.
-	 * @param game The initial game state to start with (not modified by the function)
+	 * @param game The initial game state to start with (played and unplayed back, so not modified by the function)
 	 * @param nbRuns The number of playouts to perform
 	 * @return A RolloutResults object containing the number of wins for each player and the number of simulations
 	 */
 	static RolloutResults rollOut(final Game game, int nbRuns) {
+		return rollOut(game, nbRuns, new MoveBuffer(), new SplittableRandom());
+	}
+
+	/**
+	 * Perform nbRuns rollouts from a game state, and returns the winning statistics for both players.
+	 * The moves are generated as codes in a reusable buffer, so the playouts do not allocate once the buffer has grown.
+	 * @param game The initial game state to start with (played and unplayed back, so not modified by the function)
+	 * @param nbRuns The number of playouts to perform
+	 * @param moves The move buffer used by the playouts, owned by the calling thread
+	 * @param random The random generator choosing the moves, owned by the calling thread
+	 * @return A RolloutResults object containing the number of wins for each player and the number of simulations
+	 */
+	static RolloutResults rollOut(final Game game, int nbRuns, MoveBuffer moves, SplittableRandom random) {
 		RolloutResults roll = new RolloutResults();
 		for(int i = 0; i < nbRuns; i++){
-			roll.update(playRandomlyToEnd(game));
+			roll.update(playOut(game, moves, random));
 		}
 		return roll;
 	}
 
+	/**
+	 * Perform nbRuns rollouts from a game state as {@link #rollOut(Game, int, MoveBuffer, SplittableRandom)},
+	 * the playouts still running at a deadline being aborted and not counted
+	 * @param game The initial game state to start with (played and unplayed back, so not modified by the function)
+	 * @param nbRuns The number of playouts to perform
+	 * @param moves The move buffer used by the playouts, owned by the calling thread
+	 * @param random The random generator choosing the moves, owned by the calling thread
+	 * @param deadlineNanos The time when the playouts stop, given by {@link System#nanoTime()}
+	 * @return A RolloutResults object containing the number of wins for each player and the number of finished simulations
+	 */
+	static RolloutResults rollOutUntil(final Game game, int nbRuns, MoveBuffer moves, SplittableRandom random, long deadlineNanos) {
+		RolloutResults roll = new RolloutResults();
+		for(int i = 0; i < nbRuns; i++){
+			PlayerId winner = playOutUntil(game, moves, random, deadlineNanos);
+			if (winner == null)
+				break;
+			roll.update(winner);
+		}
+		return roll;
+	}
+
+	/**
+	 * Perform a single random playout from a game state as {@link #playOut(Game, MoveBuffer, SplittableRandom)},
+	 * checking the clock every {@link #DEADLINE_CHECK_PERIOD} plies to abort it at a deadline
+	 * @param game The initial game state (played and unplayed back, so not modified by the function)
+	 * @param moves The move buffer used by the playout, owned by the calling thread
+	 * @param random The random generator choosing the moves, owned by the calling thread
+	 * @param deadlineNanos The time when the playout is aborted, given by {@link System#nanoTime()}
+	 * @return The PlayerId of the winner (or NONE if equality), <code>null</code> if the playout was aborted
+	 */
+	static PlayerId playOutUntil(final Game game, MoveBuffer moves, SplittableRandom random, long deadlineNanos) {
+		int nbPlies = 0;
+		PlayerId winner;
+		while ((winner = game.winner()) == null) {
+			if (nbPlies % DEADLINE_CHECK_PERIOD == DEADLINE_CHECK_PERIOD - 1 && System.nanoTime() - deadlineNanos >= 0)
+				break;
+			int nbMoves = game.generateMoves(moves);
+			game.playUnchecked(moves.get(random.nextInt(nbMoves)));
+			nbPlies++;
+		}
+		for (; nbPlies > 0; --nbPlies) {
+			game.unplay();
+		}
+		return winner;
+	}
+
+	/**
+	 * @return A deadline which is never reached, given by {@link System#nanoTime()}
+	 */
+	static long noDeadline() {
+		return System.nanoTime() + Long.MAX_VALUE / 2;
+	}
+
+	/**
+	 * Perform a single random playout from a game state, then walk it back to the initial state
+	 * @param game The initial game state (played and unplayed back, so not modified by the function)
+	 * @param moves The move buffer used by the playout, owned by the calling thread
+	 * @param random The random generator choosing the moves, owned by the calling thread
+	 * @return The PlayerId of the winner (or NONE if equality)
+	 */
+	static PlayerId playOut(final Game game, MoveBuffer moves, SplittableRandom random) {
+		int nbPlies = 0;
+		PlayerId winner;
+		while ((winner = game.winner()) == null) {
+			int nbMoves = game.generateMoves(moves);
+			game.playUnchecked(moves.get(random.nextInt(nbMoves)));
+			nbPlies++;
+		}
+		for (; nbPlies > 0; --nbPlies) {
+			game.unplay();
+		}
+		return winner;
+	}
+
 	/**
 	 * Apply the MCTS algorithm during at most <code>timeLimitMillis</code> milliseconds to compute
 	 * the MCTS tree statistics.
 	 * @param timeLimitMillis Computation time limit in milliseconds
 	 */
+	@Override
 	public void evaluateTreeWithTimeLimit(int timeLimitMillis) {
 		// Record function entry time
 		long startTime = System.nanoTime();
 
 		// Evaluate the tree until timeout
-		while (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < timeLimitMillis) {
+		evaluateTreeUntil(startTime + TimeUnit.MILLISECONDS.toNanos(timeLimitMillis));
+
+		// Print some statistics
+		printSearchStats(startTime);
+	}
+
+	/**
+	 * Apply the MCTS algorithm until a given time (without printing anything).
+	 * The search does not start when there is a single legal move, and stops as soon as the most visited move
+	 * cannot be overtaken before the deadline (see {@link #isSettled(long, int, long)}).
+	 * @param deadlineNanos The time when the search stops, given by {@link System#nanoTime()}
+	 */
+	@Override
+	public void evaluateTreeUntil(long deadlineNanos) {
+		if (!hasChoice())
+			return;
+		long startTime = System.nanoTime();
+		int startVisits = tree.visits(ROOT);
+		int nbSteps = 0;
+		this.deadlineNanos = deadlineNanos;
+		while (!stopRequested && System.nanoTime() - deadlineNanos < 0) {
 			// Perform one MCTS step
 			boolean canStop = evaluateTreeOnce();
 			// Stop evaluating the tree if there is nothing more to explore
 			if (canStop) {
 				break;
 			}
+			if (++nbSteps % SETTLED_CHECK_PERIOD == 0 && isSettled(startTime, startVisits, deadlineNanos)) {
+				break;
+			}
 		}
+		this.deadlineNanos = noDeadline();
+	}
 
-		// Print some statistics
+	/**
+	 * Expand the root if needed, and check if there is a choice to make
+	 * @return <code>false</code> for a forced move or a finished game
+	 */
+	boolean hasChoice() {
+		if (tree.moveCount(ROOT) == NodeArena.NOT_EXPANDED)
+			expand(ROOT);
+		return tree.moveCount(ROOT) > 1;
+	}
+
+	/**
+	 * Apply the MCTS algorithm for a given number of playouts, whatever the time it takes: with a seeded random generator,
+	 * the search and its result do not depend on the speed or the load of the machine.
+	 * The search stops earlier for a forced move, or when the most visited move cannot be overtaken by the remaining playouts.
+	 * @param nbPlayouts The number of playouts (one per MCTS step, or one batch per step with leaf-parallel playouts)
+	 */
+	@Override
+	public void evaluateTreePlayouts(int nbPlayouts) {
+		if (!hasChoice())
+			return;
+		long endPlayouts = nTotal + (long) nbPlayouts;
+		int nbSteps = 0;
+		while (!stopRequested && nTotal < endPlayouts) {
+			if (evaluateTreeOnce())
+				break;
+			if (++nbSteps % SETTLED_CHECK_PERIOD == 0 && isSettled(endPlayouts - nTotal))
+				break;
+		}
+	}
+
+	/**
+	 * Apply the MCTS algorithm until the current thread has used a given CPU time (see {@link ThreadMXBean#getCurrentThreadCpuTime()}),
+	 * so that the time waiting for the processor on a loaded machine does not count.
+	 * Falls back to the wall-clock time when the CPU time of the threads is not available.
+	 * The search stops earlier for a forced move, or when the most visited move cannot be overtaken anymore.
+	 * With leaf-parallel playouts, only the CPU time of the thread running the tree counts.
+	 * @param cpuTimeNanos The CPU time budget, in nanoseconds
+	 */
+	@Override
+	public void evaluateTreeCpuTime(long cpuTimeNanos) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isCurrentThreadCpuTimeSupported()) {
+			evaluateTreeUntil(System.nanoTime() + cpuTimeNanos);
+			return;
+		}
+		if (!threads.isThreadCpuTimeEnabled())
+			threads.setThreadCpuTimeEnabled(true);
+		if (!hasChoice())
+			return;
+		long startCpuTime = threads.getCurrentThreadCpuTime();
+		int startVisits = tree.visits(ROOT);
+		int nbSteps = 0;
+		while (!stopRequested) {
+			if (evaluateTreeOnce())
+				break;
+			// The CPU time is only read every few steps, as it is slower to get than the wall-clock time
+			if (++nbSteps % SETTLED_CHECK_PERIOD == 0) {
+				long cpuTime = threads.getCurrentThreadCpuTime() - startCpuTime;
+				if (cpuTime >= cpuTimeNanos)
+					break;
+				int nbPlayouts = tree.visits(ROOT) - startVisits;
+				if (cpuTime > 0 && isSettled((double) nbPlayouts * (cpuTimeNanos - cpuTime) / cpuTime))
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Enable or disable the hard deadline mode: the playouts check the clock every few plies,
+	 * and are aborted at the deadline of {@link #evaluateTreeUntil(long)} instead of running to the end of the game.
+	 * The aborted playouts are not counted in the statistics.
+	 * @param interruptibleRollouts <code>true</code> to abort the playouts at the deadline
+	 */
+	public void setInterruptibleRollouts(boolean interruptibleRollouts) {
+		this.interruptibleRollouts = interruptibleRollouts;
+	}
+
+	/**
+	 * @return The number of playouts aborted at the deadline since the creation of the search
+	 */
+	public long nbAbortedPlayouts() {
+		return nbAbortedPlayouts;
+	}
+
+	/**
+	 * Number of MCTS steps between two checks of {@link #isSettled(long, int, long)}
+	 */
+	static final int SETTLED_CHECK_PERIOD = 16;
+
+	/**
+	 * Check if the most visited root move cannot be overtaken by another one before the deadline:
+	 * each playout adds one visit to a single root child, and the number of playouts left is estimated
+	 * from the rate of the search so far.
+	 * @param startTime The time when the search started, given by {@link System#nanoTime()}
+	 * @param startVisits The number of visits of the root when the search started
+	 * @param deadlineNanos The time when the search stops
+	 * @return <code>true</code> if the best move cannot change anymore
+	 */
+	boolean isSettled(long startTime, int startVisits, long deadlineNanos) {
+		long now = System.nanoTime();
+		int nbPlayouts = tree.visits(ROOT) - startVisits;
+		if (nbPlayouts <= 0 || now == startTime)
+			return false;
+		return isSettled((double) nbPlayouts * (deadlineNanos - now) / (now - startTime));
+	}
+
+	/**
+	 * Check if the most visited root move cannot be overtaken by another one with a number of playouts
+	 * @param remainingPlayouts The number of playouts left
+	 * @return <code>true</code> if the best move cannot change anymore
+	 */
+	boolean isSettled(double remainingPlayouts) {
+		int best = 0;
+		int second = 0;
+		int first = tree.firstChild(ROOT);
+		for (int child = first; child < first + tree.childCount(ROOT); ++child) {
+			int visits = tree.visits(child);
+			if (visits > best) {
+				second = best;
+				best = visits;
+			} else if (visits > second) {
+				second = visits;
+			}
+		}
+		return best - second > remainingPlayouts;
+	}
+
+	/**
+	 * Check if the choice of the best move is unstable: another root move has a better score than the most visited one,
+	 * with at least half as many visits. The search should get more time to settle which one is best.
+	 * @return <code>true</code> if the best move is unstable
+	 */
+	public boolean isUnstable() {
+		int count = tree.childCount(ROOT);
+		if (count < 2)
+			return false;
+		int first = tree.firstChild(ROOT);
+		int mostVisited = first;
+		for (int child = first + 1; child < first + count; ++child) {
+			if (tree.visits(child) > tree.visits(mostVisited))
+				mostVisited = child;
+		}
+		for (int child = first; child < first + count; ++child) {
+			if (child != mostVisited && 2 * tree.visits(child) >= tree.visits(mostVisited)
+					&& score(child) > score(mostVisited))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Apply the MCTS algorithm until another thread calls {@link #stop()}, e.g. to search on the opponent's time
+	 */
+	public void ponder() {
+		while (!stopRequested) {
+			if (evaluateTreeOnce())
+				break;
+		}
+	}
+
+	/**
+	 * Ask the running search to stop after its current step. The caller must wait for the thread running
+	 * the search to end (e.g. with {@link Thread#join()}) before using the tree.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Print the search time and the root statistics
+	 * @param startTime The time when the search started, given by {@link System#nanoTime()}
+	 */
+	void printSearchStats(long startTime) {
 		System.out.println("Stopped search after "
 		       + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms. "
-		       + "Root stats is " + root.w + "/" + root.n + String.format(" (%.2f%% loss)", 100.0*root.w/root.n));
+		       + "Root stats is " + tree.wins(ROOT) + "/" + tree.visits(ROOT)
+		       + String.format(" (%.2f%% loss)", 100.0*tree.wins(ROOT)/tree.visits(ROOT)));
+	}
+
+	/**
+	 * Add the root statistics of another search from the same game state (root parallelization).
+	 * The statistics of the root children are summed by move, the children only expanded by the other
+	 * search are added (without their subtrees).
+	 * @param other A search started from the same game state, not running anymore
+	 */
+	public void mergeRootStats(MonteCarloTreeSearch other) {
+		NodeArena otherTree = other.tree;
+		tree.addStats(ROOT, otherTree.visits(ROOT), otherTree.wins(ROOT));
+		nTotal += other.nTotal;
+		int otherMoves = otherTree.moveCount(ROOT);
+		if (otherMoves <= 0)
+			return;
+		// Both roots have the same moves, possibly in different orders
+		if (tree.moveCount(ROOT) == NodeArena.NOT_EXPANDED) {
+			int first = tree.reserve(otherMoves);
+			for (int i = 0; i < otherMoves; ++i) {
+				tree.setCode(first + i, otherTree.code(otherTree.firstChild(ROOT) + i));
+			}
+			tree.setChildren(ROOT, first, otherMoves);
+		}
+		int first = tree.firstChild(ROOT);
+		int nbMoves = tree.moveCount(ROOT);
+		for (int i = 0; i < otherTree.childCount(ROOT); ++i) {
+			int otherChild = otherTree.firstChild(ROOT) + i;
+			for (int child = first; child < first + nbMoves; ++child) {
+				if (tree.code(child) == otherTree.code(otherChild)) {
+					// A move only tried by the other search becomes a child
+					if (child >= first + tree.childCount(ROOT)) {
+						tree.swapCodes(child, first + tree.childCount(ROOT));
+						child = tree.addChild(ROOT);
+					}
+					tree.addStats(child, otherTree.visits(otherChild), otherTree.wins(otherChild));
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The exploration constant of UCT
+	 */
+	static final double EXPLORATION_CONSTANT = 1.4142;
+
+	/**
+	 * Compute the Upper Confidence Bound for Trees (UCT) value for a node.
+	 * @param node The node
+	 * @param logParentVisits The logarithm of the number of visits of the parent node
+	 * @return UCT value for the node
+	 */
+	double uct(int node, double logParentVisits) {
+		return uct(tree.wins(node), tree.visits(node), logParentVisits);
+	}
+
+	/**
+	 * Compute the Upper Confidence Bound for Trees (UCT) value from some statistics
+	 * @param wins The number of wins, a draw counting as a half win
+	 * @param visits The number of visits
+	 * @param logParentVisits The logarithm of the number of visits of the parent
+	 * @return UCT value, infinite without visits
+	 */
+	static double uct(double wins, int visits, double logParentVisits) {
+		if (visits == 0) return Double.POSITIVE_INFINITY;
+		return (wins / visits) + EXPLORATION_CONSTANT * Math.sqrt(logParentVisits / visits);
+	}
+
+	/**
+	 * "Score" of a node, i.e estimated probability of winning when moving to this node
+	 * @param node The node
+	 * @return Estimated probability of win for the node
+	 */
+	double score(int node) {
+		int n = tree.visits(node);
+		if (n == 0) return 0.0;
+		return tree.wins(node) / n;
 	}
 
 	/**
@@ -232,125 +935,225 @@ public class MonteCarloTreeSearch {
 	 * @return <code>true</code> if there is no need for further exploration (to speed up end of games).
 	 */
 	public boolean evaluateTreeOnce() {
-		// List of visited nodes
-		// --- visités = new List <EvalNode >()
-		List<EvalNode> visited = new ArrayList<EvalNode>();
-		//--- visités.add( node )
-		visited.add(root);
-
-		// Start from the root
-		// --- node = racine
-		EvalNode node = root;
-
-
-		// Selection (with UCT tree policy)
-		while(!node.children.isEmpty()){
-			int indexNextNode = 0;
-			double biggestUCT = 0;
-			for(int i = 0; i < node.children.size() ; i++){
-				if(biggestUCT < node.children.get(i).uct()){
-					indexNextNode = i;
-					biggestUCT = node.children.get(i).uct();
-				}
-			}
-			node = node.children.get(indexNextNode);
-			visited.add(node);
-		}
-
-		// Expand node
-		//Si il n'est plus possible de créer un fils on ne continue pas
-		//System.out.println("MOVE POSSIBLE :" + node.game.possibleMoves().size() + node.game.view());
-		if(node.game.possibleMoves().isEmpty()) return true;
-		List<Move> moveList = node.game.possibleMoves();
-		for(int i = 0; i < moveList.size(); i ++){
-			Game newGame = node.game.clone();
-			newGame.play(moveList.get(i));
-			EvalNode newFils = new EvalNode(newGame);
-			node.children.add(newFils);
-		}
-		if(node.children.isEmpty()) return true;
-		Random rand = new Random(); // On descend dans un fils random
-		EvalNode nextExpansion = node.children.get(rand.nextInt(node.children.size()));
-		visited.add(nextExpansion);
-		node = nextExpansion;
+		if (tree.size() >= nodeBudget)
+			prune();
+		int depth = 0;
+		int node = ROOT;
+		path[depth++] = node;
+		if (sharedTable != null)
+			pathKeys[ROOT] = game.hashKey();
 
-		// Simulate from new node(s)
-		RolloutResults rollout = rollOut(node.game.clone(),1);
-		//System.out.println("Résultat rollOut : win1:" + rollout.win1 + " win2:" +rollout.win2 + " n: " + rollout.n);
-
-		//System.out.println("Let's backpropagate ! ");
-		// Backpropagate results
-		for(int i = 0; i < visited.size(); i++){
-			EvalNode tmp = visited.get(i);
-			//System.out.println(visited.size() + " : " +  i%2);
-			if(root.game.player().equals(PlayerId.ONE)) {
-				if ((i % 2) == 0) {
-					tmp.w = (int) (tmp.w + rollout.win1);
-					//System.out.println("Victoire du noeud visited :"+visited.get(i).w);
-				} else {
-					tmp.w = (int) (tmp.w + rollout.win2);
-				}
+		// Selection (with UCT tree policy) while all the moves of the node are tried, walking the game state down the tree
+		boolean transposed = false;
+		while (true) {
+			// Below a transposition, the game state may be finished earlier than the state of the shared node
+			// (e.g. with more king moves), the rollout then only gives the winner
+			if (transposed && game.winner() != null)
+				break;
+			int nbMoves = tree.moveCount(node);
+			if (nbMoves == NodeArena.NOT_EXPANDED) {
+				int position = findTransposition();
+				transposed |= position >= 0;
+				if (position >= 0) {
+					node = position;
+					nbMoves = tree.moveCount(node);
+				} else
+					nbMoves = expand(node);
 			}
-			else {
-				if ((i % 2) == 0) {
-					tmp.w = (int) (tmp.w + rollout.win2);
-					//System.out.println("Victoire du noeud visited :"+visited.get(i).w);
-				} else {
-					tmp.w = (int) (tmp.w + rollout.win1);
-				}
+			int nbChildren = tree.childCount(node);
+			// Expansion: a child is added for an untried move picked at random
+			if (nbChildren < nbMoves) {
+				int first = tree.firstChild(node);
+				tree.swapCodes(first + nbChildren, first + nbChildren + random.nextInt(nbMoves - nbChildren));
+				node = tree.addChild(node);
+				game.playUnchecked(tree.code(node));
+				depth = visit(depth, node);
+				// A new child whose state is already expanded is not simulated, the selection goes on from that state
+				int position = (transpositions != null && game.winner() == null) ? findTransposition() : -1;
+				if (position < 0)
+					break;
+				transposed = true;
+				node = position;
+				continue;
 			}
-			tmp.n = (int) (tmp.n + rollout.n);
-			//System.out.println("tmp.n = " + tmp.n);
-			visited.set(i,tmp);
+			if (nbChildren == 0)
+				break;
+			node = selectChild(node, nbChildren, pathKeys[depth - 1]);
+			game.playUnchecked(tree.code(node));
+			depth = visit(depth, node);
+		}
+		// Nothing to search if the root game is finished
+		if (depth == 1 && tree.moveCount(ROOT) == 0) {
+			return true;
 		}
-		//System.out.println("Stats root :" + visited.get(0).w + "/" + visited.get(0).n);
 
+		// Simulate from new node(s)
+		RolloutResults rollout;
+		if (!interruptibleRollouts)
+			rollout = (rolloutExecutor == null) ? rollOut(game, 1, rolloutMoves, random)
+					: rolloutExecutor.rollOut(game, random);
+		else
+			rollout = (rolloutExecutor == null) ? rollOutUntil(game, 1, rolloutMoves, random, deadlineNanos)
+					: rolloutExecutor.rollOutUntil(game, random, deadlineNanos);
+		unplayToRoot(depth);
+		// The playouts aborted at the deadline are not counted, the new child stays without visits
+		if (rollout.n == 0) {
+			nbAbortedPlayouts++;
+			return false;
+		}
+
+		// Backpropagate results: the root is reached by a move of the opponent of the root player,
+		// then the players alternate
+		PlayerId rootPlayer = game.player();
+		for (int i = 0; i < depth; ++i) {
+			PlayerId mover = (i % 2 == 0) ? rootPlayer.other() : rootPlayer;
+			tree.addStats(path[i], rollout.nbSimulations(), (float) rollout.nbWins(mover));
+			if (sharedTable != null && i > 0)
+				sharedTable.addResults(SharedTranspositionTable.moveKey(pathKeys[i - 1], tree.code(path[i])),
+						rollout.nbSimulations(), rollout.nbWins(mover));
+		}
 
-		//System.out.println("Let's explore ! POSSIBLES MOVES DEPUIS FEUILLE " + node.game.possibleMoves().size() );
-		// Return false if tree evaluation should continue
-		//TODO Changer la condition si necessaire
-		nTotal+= 1;
+		nTotal += rollout.n;
 		return false;
 	}
 
 	/**
-	 * Select the best move to play, given the current MCTS tree playout statistics
-	 * @return The best move to play from the current MCTS tree state.
+	 * Generate the moves of a node in the current game state, which are kept as its untried moves
+	 * @param node The node, reached by the current game state
+	 * @return The number of moves (0 if the game is finished)
 	 */
-	public Move getBestMove() {
-		System.out.println("Recherche du meilleur coups possible ..");
-		List<EvalNode> children = root.children;
-		List<Move> possibleMoves = root.game.possibleMoves();
-		int indexOfBestChildren = -1;
-		double bestScore = 1;
-		System.out.println("ROOT POSSEDE " + root.children.size() + " FILS");
-		//if(root.game.player().equals(PlayerId.ONE)) {
-			for (int i = 0; i < children.size(); i++) {
-				//System.out.println(i + " : " + possibleMoves.get(i) + " " + children.get(i).w / children.get(i).n);
-				if ((children.get(i).w / children.get(i).n) < bestScore) {
-					bestScore = (children.get(i).w / children.get(i).n);
-					indexOfBestChildren = i;
-				}
+	int expand(int node) {
+		if (transpositions != null)
+			transpositions.put(game.hashKey(), node, tree);
+		int nbMoves = (game.winner() == null) ? game.generateMoves(rolloutMoves) : 0;
+		int first = tree.reserve(nbMoves);
+		for (int i = 0; i < nbMoves; ++i) {
+			tree.setCode(first + i, rolloutMoves.get(i));
+		}
+		tree.setChildren(node, first, nbMoves);
+		return nbMoves;
+	}
+
+	/**
+	 * Select the child with the best UCT value.
+	 * With transpositions, the visits of the state are the visits of its children, as the node is not the only way to the children.
+	 * @param node The node, whose moves are all tried
+	 * @param nbChildren The number of children of the node
+	 * @param stateKey The key of the game state of the node (only used with a {@link #sharedTable})
+	 * @return The selected child
+	 */
+	int selectChild(int node, int nbChildren, long stateKey) {
+		if (sharedTable != null)
+			return selectSharedChild(node, nbChildren, stateKey);
+		int first = tree.firstChild(node);
+		long parentVisits = tree.visits(node);
+		if (transpositions != null) {
+			parentVisits = 0;
+			for (int child = first; child < first + nbChildren; ++child) {
+				parentVisits += tree.visits(child);
 			}
-		//}
-/*
-		else {
-			bestScore = 1;
-			for (int i = 0; i < children.size(); i++) {
-				//System.out.println(i + " : " + possibleMoves.get(i) + " " + children.get(i).w / children.get(i).n);
-				if ((children.get(i).w / children.get(i).n) < bestScore) {
-					bestScore = (children.get(i).w / children.get(i).n);
-					indexOfBestChildren = i;
-				}
+		}
+		double logParentVisits = Math.log(Math.max(parentVisits, 1));
+		int best = first;
+		double bestUct = Double.NEGATIVE_INFINITY;
+		for (int child = first; child < first + nbChildren; ++child) {
+			double uct = uct(child, logParentVisits);
+			if (uct > bestUct) {
+				bestUct = uct;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Select the child with the best UCT value, the results of a child being the ones of the {@link #sharedTable}
+	 * when they have more visits than the child (they include the results of the other searches).
+	 * The visits of the state are the visits of its children.
+	 * @param node The node, whose moves are all tried
+	 * @param nbChildren The number of children of the node
+	 * @param stateKey The key of the game state of the node
+	 * @return The selected child
+	 */
+	int selectSharedChild(int node, int nbChildren, long stateKey) {
+		if (childVisits.length < nbChildren) {
+			childVisits = new int[2 * nbChildren];
+			childWins = new double[2 * nbChildren];
+		}
+		int first = tree.firstChild(node);
+		long parentVisits = 0;
+		for (int i = 0; i < nbChildren; ++i) {
+			int child = first + i;
+			long entry = sharedTable.probe(SharedTranspositionTable.moveKey(stateKey, tree.code(child)));
+			if (SharedTranspositionTable.visits(entry) > tree.visits(child)) {
+				childVisits[i] = SharedTranspositionTable.visits(entry);
+				childWins[i] = SharedTranspositionTable.wins(entry);
+			} else {
+				childVisits[i] = tree.visits(child);
+				childWins[i] = tree.wins(child);
+			}
+			parentVisits += childVisits[i];
+		}
+		double logParentVisits = Math.log(Math.max(parentVisits, 1));
+		int best = first;
+		double bestUct = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < nbChildren; ++i) {
+			double uct = uct(childWins[i], childVisits[i], logParentVisits);
+			if (uct > bestUct) {
+				bestUct = uct;
+				best = first + i;
 			}
 		}
-*/
+		return best;
+	}
+	
+	/**
+	 * Add a node to the path of the current MCTS step
+	 * @param depth The number of nodes already in the path
+	 * @param node The visited node
+	 * @return The new number of nodes in the path
+	 */
+	int visit(int depth, int node) {
+		if (depth == path.length) {
+			path = Arrays.copyOf(path, 2 * depth);
+			pathKeys = Arrays.copyOf(pathKeys, 2 * depth);
+		}
+		path[depth] = node;
+		if (sharedTable != null)
+			pathKeys[depth] = game.hashKey();
+		return depth + 1;
+	}
+
+	/**
+	 * Walk the game state back to the root, undoing the moves of the visited nodes
+	 * @param depth The number of visited nodes, including the root
+	 */
+	void unplayToRoot(int depth) {
+		for (int i = 1; i < depth; ++i) {
+			game.unplay();
+		}
+	}
 
-		if (indexOfBestChildren < 0) {
+	/**
+	 * Select the best move to play, given the current MCTS tree playout statistics:
+	 * the most visited move, the best score breaking ties.
+	 * @return The best move to play from the current MCTS tree state.
+	 */
+	@Override
+	public Move getBestMove() {
+		int count = tree.childCount(ROOT);
+		if (tree.moveCount(ROOT) <= 0) {
 			System.out.println("Erreur getBestMove");
+			return null;
+		}
+		int first = tree.firstChild(ROOT);
+		int best = first;
+		for (int child = first + 1; child < first + count; ++child) {
+			if (tree.visits(child) > tree.visits(best)
+					|| (tree.visits(child) == tree.visits(best) && score(child) > score(best)))
+				best = child;
 		}
-		if(root.children.size() == 1) indexOfBestChildren = 0;
-		return possibleMoves.get(indexOfBestChildren);
+		return game.decodeMove(tree.code(best));
 	}
 	
 	
@@ -358,13 +1161,17 @@ public class MonteCarloTreeSearch {
 	 * Get a few stats about the MTS tree and the possible moves scores
 	 * @return A string containing MCTS stats
 	 */
+	@Override
 	public String stats() {
-		String str = "MCTS with " + nTotal + " evals\n";
-		Iterator<Move> itMove = root.game.possibleMoves().iterator();
-		for (EvalNode node : root.children) {
-			Move move = itMove.next();
-			double score = node.score();
-			str += move + " : " + score + " (" + node.w + "/" + node.n + ")\n";
+		String str = "MCTS with " + nTotal + " evals, " + tree.size() + " nodes, " + nbEvictions + " evictions";
+		if (transpositions != null)
+			str += ", " + nbTranspositions + " transpositions, " + transpositions.size() + " states in the table ("
+					+ transpositions.nbReplacements() + " replaced)";
+		str += "\n";
+		int first = tree.firstChild(ROOT);
+		for (int child = first; child < first + tree.childCount(ROOT); ++child) {
+			double score = score(child);
+			str += game.decodeMove(tree.code(child)) + " : " + score + " (" + tree.wins(child) + "/" + tree.visits(child) + ")\n";
 		}
 		return str;
 	}
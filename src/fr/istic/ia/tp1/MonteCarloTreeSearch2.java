@@ -1,9 +1,8 @@
 package fr.istic.ia.tp1;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.TimeUnit;
 
 import fr.istic.ia.tp1.Game.Move;
@@ -35,6 +34,13 @@ public class MonteCarloTreeSearch2 {
         /** The children of the node: the games states accessible by playing a move from this node state */
         ArrayList<EvalNode> children;
 
+        /**
+         * The codes of the moves of the node state, generated once by {@link #nbMoves()} (<code>null</code> before).
+         * The child <code>i</code> is reached by the move <code>i</code>, so the moves from
+         * <code>children.size()</code> on are the untried ones.
+         */
+        MoveBuffer moves;
+
 
         /**
          * The only constructor of EvalNode.
@@ -47,6 +53,30 @@ public class MonteCarloTreeSearch2 {
             n = 0;
         }
 
+        /**
+         * Get the number of moves of the node state, generating them on the first call
+         * @return The number of possible moves (0 if the game is finished)
+         */
+        int nbMoves() {
+            if (moves == null) {
+                moves = new MoveBuffer();
+                if (game.winner() == null)
+                    game.generateMoves(moves);
+            }
+            return moves.size();
+        }
+
+        /**
+         * Add the child reached by the next untried move
+         * @return The new child
+         */
+        EvalNode expand() {
+            EvalNode child = new EvalNode(game.clone());
+            child.game.playUnchecked(moves.get(children.size()));
+            children.add(child);
+            return child;
+        }
+
         /**
          * Compute the Upper Confidence Bound for Trees (UCT) value for the node.
          * @return UCT value for the node
@@ -165,14 +195,34 @@ public class MonteCarloTreeSearch2 {
      */
     int nTotal;
 
+    /**
+     * The executor of the playouts run from each new leaf
+     */
+    final RolloutExecutor rolloutExecutor;
+
+    /**
+     * The random generator of the playouts
+     */
+    final SplittableRandom random = new SplittableRandom();
+
 
     /**
      * The constructor
      * @param game
      */
     public MonteCarloTreeSearch2(Game game) {
+        this(game, new RolloutExecutor(10));
+    }
+
+    /**
+     * Constructor with a given rollout executor
+     * @param game
+     * @param rolloutExecutor The executor of the playouts run from each new leaf (its batch size is the number of playouts per leaf)
+     */
+    public MonteCarloTreeSearch2(Game game, RolloutExecutor rolloutExecutor) {
         root = new EvalNode(game.clone());
         nTotal = 0;
+        this.rolloutExecutor = rolloutExecutor;
     }
 
     /**
@@ -183,7 +233,7 @@ public class MonteCarloTreeSearch2 {
     static PlayerId playRandomlyToEnd(Game game) {
         while(game.winner() == null){
             Player bot = new PlayerRandom();
-            game.play(bot.play(game));
+            game.playUnchecked(bot.play(game));
         }
         return game.winner();
     }
@@ -197,7 +247,7 @@ public class MonteCarloTreeSearch2 {
     static RolloutResults rollOut(final Game game, int nbRuns) {
         RolloutResults roll = new RolloutResults();
         for(int i = 0; i < nbRuns; i++){
-            roll.update(playRandomlyToEnd(game));
+            roll.update(playRandomlyToEnd(game.clone()));
         }
         return roll;
     }
@@ -247,18 +297,9 @@ public class MonteCarloTreeSearch2 {
         //Tant que le noeud courant n'est pas une feuille
         while (!currentNode.children.isEmpty()) {
             //Si ses enfants ne couvrent pas toutes les possibilités
-            if (currentNode.children.size() < currentNode.game.possibleMoves().size()) {
-                //On ajoute un enfant à noeud courant qui couvre une nouvelle possibilité
-                EvalNode child = new EvalNode(currentNode.game.clone());
-                int i = 0;
-                List<Move> possibleMoves = currentNode.game.possibleMoves();
-                child.game.play(possibleMoves.get(0));
-                while (i<currentNode.children.size() && currentNode.children.contains(child)) {
-                    ++i;
-                    child = new EvalNode(currentNode.game.clone());
-                    child.game.play(possibleMoves.get(i));
-                }
-                currentNode.children.add(child);
+            if (currentNode.children.size() < currentNode.nbMoves()) {
+                //On ajoute un enfant à noeud courant qui couvre le prochain coup non essayé
+                EvalNode child = currentNode.expand();
                 //On ajoute cet enfant aux noeuds visités
                 visitedNodes.add(child);
                 //Il devient le nouveau noeud courant
@@ -283,7 +324,7 @@ public class MonteCarloTreeSearch2 {
         }
         //À la fin de cette boucle, on a un noeud qui est une feuille
         //Si il n'a plus de move disponible
-        if (currentNode.game.possibleMoves().size() == 0) {
+        if (currentNode.nbMoves() == 0) {
             //On récupère l'issue du match
             PlayerId winner = currentNode.game.winner();
             //On fait parvenir aux enfants l'issue du match en remontant la liste des neouds visités
@@ -300,25 +341,12 @@ public class MonteCarloTreeSearch2 {
         //Sinon
         else {
             //On lui fait jouer le premier move parmi la liste des moves possible
-            List<Move> possibleMoves = currentNode.game.possibleMoves();
-            EvalNode child = new EvalNode(currentNode.game.clone());
-            child.game.play(possibleMoves.get(0));
-            currentNode.children.add(child);
-            currentNode = child;
-            //On génère à partir de cet enfant une série de match aléatoires
-            double wins = 0;
-            double losses = 0;
-            double iterations = 10;
-            for (int i = 0; i<iterations; ++i) {
-                PlayerId winner = playRandomlyToEnd(currentNode.game.clone());
-                if (winner.equals(currentNode.game.player()))
-                    wins++;
-                else if (winner == PlayerId.NONE) {
-                    wins += 0.5;
-                    losses += 0.5;
-                } else
-                    losses++;
-            }
+            currentNode = currentNode.expand();
+            //On génère à partir de cet enfant une série de match aléatoires, en parallèle
+            MonteCarloTreeSearch.RolloutResults results = rolloutExecutor.rollOut(currentNode.game, random);
+            double iterations = results.nbSimulations();
+            double wins = results.nbWins(currentNode.game.player());
+            double losses = iterations - wins;
             //On fait remonter à tous les éléments de la liste visites l'issue de ces matchs et le nombre de match au total
             for (int i = visitedNodes.size()-1; i>0; --i) {
                 EvalNode node = visitedNodes.get(i);
@@ -336,7 +364,7 @@ public class MonteCarloTreeSearch2 {
         for (int i = visitedNodes.size()-1; i>=0; --i) {
             //si un des noeuds a sa liste de movespossibles non vide, on met noMoreMoves à false et on break
             EvalNode node = visitedNodes.get(i);
-            if (node.game.possibleMoves().size() > 0) {
+            if (node.nbMoves() > 0) {
                 noMoreMoves = false;
                 break;
             }
@@ -355,7 +383,6 @@ public class MonteCarloTreeSearch2 {
     public Move getBestMove() {
         System.out.println("Recherche du meilleur coups possible ..");
         List<EvalNode> children = root.children;
-        List<Move> possibleMoves = root.game.possibleMoves();
         int indexOfBestChildren = -1;
         double bestScore = Integer.MAX_VALUE;
         System.out.println("ROOT POSSEDE " + root.children.size() + " FILS");
@@ -369,7 +396,7 @@ public class MonteCarloTreeSearch2 {
         if (indexOfBestChildren < 0) {
             System.out.println("Erreur getBestMove");
         }
-        return possibleMoves.get(indexOfBestChildren);
+        return root.game.decodeMove(root.moves.get(indexOfBestChildren));
     }
 
 
@@ -379,9 +406,9 @@ public class MonteCarloTreeSearch2 {
      */
     public String stats() {
         String str = "MCTS with " + nTotal + " evals\n";
-        Iterator<Move> itMove = root.game.possibleMoves().iterator();
-        for (EvalNode node : root.children) {
-            Move move = itMove.next();
+        for (int i = 0; i < root.children.size(); ++i) {
+            EvalNode node = root.children.get(i);
+            Move move = root.game.decodeMove(root.moves.get(i));
             double score = node.score();
             str += move + " : " + score + " (" + node.w + "/" + node.n + ")\n";
         }
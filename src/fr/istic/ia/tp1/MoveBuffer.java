@@ -0,0 +1,73 @@
+package fr.istic.ia.tp1;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of move codes, filled by {@link Game#generateMoves(MoveBuffer)}.
+ * The buffer is owned by the caller and meant to be reused from one state to the next
+ * (one buffer per thread), so that generating moves does not allocate once the buffer has grown
+ * to the largest number of moves met. Codes are only meaningful for the game that generated them.
+ */
+public final class MoveBuffer {
+	/** The move codes, only the first {@link #size} are used */
+	private long[] codes;
+
+	/** The number of codes in the buffer */
+	private int size;
+
+	/**
+	 * Create an empty buffer with a default capacity
+	 */
+	public MoveBuffer() {
+		this(64);
+	}
+
+	/**
+	 * Create an empty buffer
+	 * @param capacity Initial number of codes that can be stored without growing
+	 */
+	public MoveBuffer(int capacity) {
+		codes = new long[Math.max(capacity, 1)];
+		size = 0;
+	}
+
+	/**
+	 * Remove all the codes (the capacity is kept)
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Append a move code
+	 * @param code The move code
+	 */
+	public void add(long code) {
+		if (size == codes.length)
+			codes = Arrays.copyOf(codes, 2 * codes.length);
+		codes[size++] = code;
+	}
+
+	/**
+	 * Get a move code
+	 * @param i Index of the code, between 0 and {@link #size()} - 1
+	 * @return The <code>i</code>-th move code
+	 */
+	public long get(int i) {
+		return codes[i];
+	}
+
+	/**
+	 * @return The number of codes in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return <code>true</code> if the buffer holds no code
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,91 @@
+package fr.istic.ia.tp1;
+
+import java.util.Arrays;
+
+/**
+ * A set of packed move codes (see {@link EnglishDraughts.DraughtsMove}), stored with open addressing
+ * in a primitive array, so that checking if a move is valid is a single hash lookup without boxing.
+ * The code 0 is reserved to mark empty slots (it is never a valid move code).
+ *
+ */
+class MoveCodeSet {
+	/** The hash table, its length is a power of two */
+	private long[] table;
+
+	/** The number of codes in the set */
+	private int size;
+
+	/**
+	 * Create an empty set
+	 */
+	MoveCodeSet() {
+		table = new long[32];
+		size = 0;
+	}
+
+	/**
+	 * Remove all the codes from the set
+	 */
+	void clear() {
+		Arrays.fill(table, 0L);
+		size = 0;
+	}
+
+	/**
+	 * Get the number of codes in the set
+	 * @return The number of codes
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Add a code to the set
+	 * @param code A move code, different from 0
+	 */
+	void add(long code) {
+		if (2 * (size + 1) > table.length) {
+			long[] oldTable = table;
+			table = new long[2 * oldTable.length];
+			size = 0;
+			for (long oldCode : oldTable) {
+				if (oldCode != 0)
+					add(oldCode);
+			}
+		}
+		int mask = table.length - 1;
+		for (int i = slot(code, mask); ; i = (i + 1) & mask) {
+			if (table[i] == code)
+				return;
+			if (table[i] == 0) {
+				table[i] = code;
+				size++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Check if a code is in the set
+	 * @param code A move code
+	 * @return <code>true</code> if the code was added to the set
+	 */
+	boolean contains(long code) {
+		int mask = table.length - 1;
+		for (int i = slot(code, mask); table[i] != 0; i = (i + 1) & mask) {
+			if (table[i] == code)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * First slot to probe for a code (Fibonacci hashing)
+	 * @param code The move code
+	 * @param mask Table length minus one
+	 * @return The slot index
+	 */
+	private static int slot(long code, int mask) {
+		return (int) ((code * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+	}
+}
@@ -0,0 +1,229 @@
+package fr.istic.ia.tp1;
+
+import java.util.Arrays;
+
+/**
+ * Storage of the nodes of a search tree as a structure of primitive arrays, a node being an index in the arrays.
+ * Each node holds its statistics (visits and wins), the code of the move leading to it
+ * (see {@link Game#generateMoves(MoveBuffer)}) and its children, stored as a contiguous block of nodes.
+ * The game states are not stored: they are obtained by playing the moves from the root.
+ *
+ * The children are expanded lazily: when the moves of a node are generated, a block with one slot per move
+ * is reserved and only receives the move codes, which act as the list of the untried moves.
+ * The slots then become children one at a time ({@link #addChild(int)}), the first {@link #childCount(int)}
+ * slots of the block being the children and the others the untried moves.
+ *
+ * A node takes 28 bytes, without any object per node. The arrays grow by chunks of {@link #CHUNK_SIZE} nodes,
+ * so growing never copies the existing nodes, and {@link #clear()} keeps the chunks for the next search.
+ */
+final class NodeArena {
+	/** Number of bits of a node index giving its position in a chunk */
+	static final int CHUNK_BITS = 14;
+
+	/** Number of nodes in a chunk */
+	static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	/** Mask of a node index giving its position in a chunk */
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/** Number of bytes of a node in the arrays */
+	static final int BYTES_PER_NODE = 28;
+
+	/** {@link #moveCount(int)} of a node whose moves have not been generated yet */
+	static final int NOT_EXPANDED = -1;
+
+	/** Number of visits of each node */
+	private int[][] visits = new int[0][];
+
+	/** Number of wins of each node, a draw counting as a half win */
+	private float[][] wins = new float[0][];
+
+	/** Index of the first child of each node */
+	private int[][] firstChild = new int[0][];
+
+	/** Number of moves (reserved child slots) of each node, {@link #NOT_EXPANDED} before the expansion of the node */
+	private int[][] moveCount = new int[0][];
+
+	/** Number of children of each node, i.e. of tried moves */
+	private int[][] childCount = new int[0][];
+
+	/** Code of the move leading to each node */
+	private long[][] codes = new long[0][];
+
+	/** Number of allocated nodes */
+	private int size;
+
+	/**
+	 * Remove all the nodes (the chunks are kept)
+	 */
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return The number of allocated nodes
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return The number of nodes that can be allocated without adding chunks
+	 */
+	int capacity() {
+		return visits.length * CHUNK_SIZE;
+	}
+
+	/**
+	 * Allocate a contiguous block of new nodes, not expanded and without statistics
+	 * @param count The number of nodes
+	 * @return The index of the first node of the block
+	 */
+	int allocate(int count) {
+		int first = reserve(count);
+		for (int node = first; node < first + count; ++node) {
+			initNode(node);
+			codes[node >>> CHUNK_BITS][node & CHUNK_MASK] = 0;
+		}
+		return first;
+	}
+
+	/**
+	 * Reserve a contiguous block of node slots, without initializing them
+	 * (their codes are set with {@link #setCode(int, long)}, then they are initialized by {@link #addChild(int)})
+	 * @param count The number of slots
+	 * @return The index of the first slot of the block
+	 */
+	int reserve(int count) {
+		int first = size;
+		int end = first + count;
+		while (capacity() < end) {
+			addChunk();
+		}
+		size = end;
+		return first;
+	}
+
+	/**
+	 * Initialize a node as not expanded and without statistics (its code is kept)
+	 */
+	private void initNode(int node) {
+		int chunk = node >>> CHUNK_BITS;
+		int i = node & CHUNK_MASK;
+		visits[chunk][i] = 0;
+		wins[chunk][i] = 0;
+		firstChild[chunk][i] = 0;
+		moveCount[chunk][i] = NOT_EXPANDED;
+		childCount[chunk][i] = 0;
+	}
+
+	private void addChunk() {
+		int nbChunks = visits.length;
+		visits = Arrays.copyOf(visits, nbChunks + 1);
+		wins = Arrays.copyOf(wins, nbChunks + 1);
+		firstChild = Arrays.copyOf(firstChild, nbChunks + 1);
+		moveCount = Arrays.copyOf(moveCount, nbChunks + 1);
+		childCount = Arrays.copyOf(childCount, nbChunks + 1);
+		codes = Arrays.copyOf(codes, nbChunks + 1);
+		visits[nbChunks] = new int[CHUNK_SIZE];
+		wins[nbChunks] = new float[CHUNK_SIZE];
+		firstChild[nbChunks] = new int[CHUNK_SIZE];
+		moveCount[nbChunks] = new int[CHUNK_SIZE];
+		childCount[nbChunks] = new int[CHUNK_SIZE];
+		codes[nbChunks] = new long[CHUNK_SIZE];
+	}
+
+	/** @return The number of visits of a node */
+	int visits(int node) {
+		return visits[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/** @return The number of wins of a node */
+	float wins(int node) {
+		return wins[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * Add the results of some playouts to the statistics of a node
+	 * @param node The node
+	 * @param nbVisits The number of playouts
+	 * @param nbWins The number of wins among the playouts
+	 */
+	void addStats(int node, int nbVisits, float nbWins) {
+		visits[node >>> CHUNK_BITS][node & CHUNK_MASK] += nbVisits;
+		wins[node >>> CHUNK_BITS][node & CHUNK_MASK] += nbWins;
+	}
+
+	/** @return The index of the first child slot of a node (meaningless if it has no moves) */
+	int firstChild(int node) {
+		return firstChild[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/** @return The number of moves of a node, or {@link #NOT_EXPANDED} */
+	int moveCount(int node) {
+		return moveCount[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/** @return The number of children of a node (its tried moves) */
+	int childCount(int node) {
+		return childCount[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * Set the block of child slots of a node, none of them being a child yet
+	 * @param node The node
+	 * @param first The index of the first slot
+	 * @param count The number of moves (0 for a finished game)
+	 */
+	void setChildren(int node, int first, int count) {
+		firstChild[node >>> CHUNK_BITS][node & CHUNK_MASK] = first;
+		moveCount[node >>> CHUNK_BITS][node & CHUNK_MASK] = count;
+		childCount[node >>> CHUNK_BITS][node & CHUNK_MASK] = 0;
+	}
+
+	/**
+	 * Turn the next untried move slot of a node into a child, not expanded and without statistics
+	 * @param node The node, with less children than moves
+	 * @return The new child
+	 */
+	int addChild(int node) {
+		int child = firstChild(node) + childCount[node >>> CHUNK_BITS][node & CHUNK_MASK]++;
+		initNode(child);
+		return child;
+	}
+
+	/** @return The code of the move leading to a node */
+	long code(int node) {
+		return codes[node >>> CHUNK_BITS][node & CHUNK_MASK];
+	}
+
+	/**
+	 * Set the code of the move leading to a node
+	 * @param node The node
+	 * @param code The move code
+	 */
+	void setCode(int node, long code) {
+		codes[node >>> CHUNK_BITS][node & CHUNK_MASK] = code;
+	}
+
+	/**
+	 * Exchange the codes of two nodes, e.g. to move an untried move to the next slot to try
+	 */
+	void swapCodes(int a, int b) {
+		long code = code(a);
+		setCode(a, code(b));
+		setCode(b, code);
+	}
+
+	/**
+	 * Copy the statistics and the move code of a node of another arena (not its children)
+	 * @param node The node of this arena
+	 * @param from The other arena
+	 * @param fromNode The node of the other arena
+	 */
+	void copyNode(int node, NodeArena from, int fromNode) {
+		visits[node >>> CHUNK_BITS][node & CHUNK_MASK] = from.visits(fromNode);
+		wins[node >>> CHUNK_BITS][node & CHUNK_MASK] = from.wins(fromNode);
+		codes[node >>> CHUNK_BITS][node & CHUNK_MASK] = from.code(fromNode);
+	}
+}
@@ -0,0 +1,115 @@
+package fr.istic.ia.tp1;
+
+import java.util.Arrays;
+
+/**
+ * Bounded hash table from the keys of game states ({@link Game#hashKey()}) to the nodes of a {@link NodeArena},
+ * so that a state reached by several move orders (a transposition) is searched from a single node.
+ *
+ * The table is set-associative: a key can only be stored in the {@link #WAYS} slots of its bucket.
+ * When they are all taken, the entry of the least visited node is replaced: the node stays in the tree,
+ * only its transpositions are not found anymore. The table takes 12 bytes per entry, without any object per entry.
+ */
+final class NodeTable {
+	/** Number of slots of a bucket */
+	static final int WAYS = 4;
+
+	/** The {@link #nodes} of an empty slot */
+	private static final int EMPTY = -1;
+
+	/** The key of the state of each slot */
+	private final long[] keys;
+
+	/** The node of each slot, {@link #EMPTY} for an empty slot */
+	private final int[] nodes;
+
+	/** Mask of a key giving its bucket */
+	private final int bucketMask;
+
+	/** Number of entries */
+	private int size;
+
+	/** Number of entries replaced by another state */
+	private long nbReplacements;
+
+	/**
+	 * Create an empty table
+	 * @param capacity The maximum number of entries, rounded up to a power of 2
+	 */
+	NodeTable(int capacity) {
+		int nbSlots = Math.max(Integer.highestOneBit(Math.min(Math.max(capacity, 1), 1 << 29) * 2 - 1), WAYS);
+		keys = new long[nbSlots];
+		nodes = new int[nbSlots];
+		bucketMask = nbSlots / WAYS - 1;
+		clear();
+	}
+
+	/**
+	 * Remove all the entries
+	 */
+	void clear() {
+		Arrays.fill(nodes, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * @return The number of entries
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return The maximum number of entries
+	 */
+	int capacity() {
+		return nodes.length;
+	}
+
+	/**
+	 * @return The number of entries replaced by another state since the creation of the table
+	 */
+	long nbReplacements() {
+		return nbReplacements;
+	}
+
+	/**
+	 * Look for the node of a state
+	 * @param key The key of the state
+	 * @return The node of the state, or -1 if it is not in the table
+	 */
+	int get(long key) {
+		int first = ((int) key & bucketMask) * WAYS;
+		for (int slot = first; slot < first + WAYS; ++slot) {
+			if (nodes[slot] != EMPTY && keys[slot] == key)
+				return nodes[slot];
+		}
+		return -1;
+	}
+
+	/**
+	 * Add the node of a state if the state is not in the table yet, replacing the least visited node of its bucket when it is full
+	 * @param key The key of the state
+	 * @param node The node of the state
+	 * @param tree The arena of the nodes, giving their visits
+	 */
+	void put(long key, int node, NodeArena tree) {
+		int first = ((int) key & bucketMask) * WAYS;
+		int victim = first;
+		for (int slot = first; slot < first + WAYS; ++slot) {
+			if (nodes[slot] == EMPTY) {
+				keys[slot] = key;
+				nodes[slot] = node;
+				size++;
+				return;
+			}
+			if (keys[slot] == key)
+				return;
+			if (tree.visits(nodes[slot]) < tree.visits(nodes[victim]))
+				victim = slot;
+		}
+		keys[victim] = key;
+		nodes[victim] = node;
+		nbReplacements++;
+	}
+}
@@ -0,0 +1,391 @@
+package fr.istic.ia.tp1;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import fr.istic.ia.tp1.Game.Move;
+import fr.istic.ia.tp1.Game.PlayerId;
+
+/**
+ * A tree-parallel Monte-Carlo Tree Search: several worker threads run the MCTS steps (selection, expansion,
+ * rollout and backpropagation) concurrently on a single shared tree.
+ *
+ * The tree is lock-free:
+ * - the statistics of a node are packed in a single <code>long</code>, updated atomically
+ *   (number of visits in the high 32 bits, number of half wins in the low 32 bits);
+ * - a node is expanded by publishing its array of children with a compare-and-set,
+ *   the losing threads use the children of the winning one;
+ * - the visit of a node is counted when a worker selects it, and its result only after the rollout:
+ *   meanwhile the visit counts as a loss (virtual loss), so the other workers are steered toward other branches.
+ *
+ * Each worker walks its own copy of the game state down the tree with {@link Game#playUnchecked(long)},
+ * and back with {@link Game#unplay()}, with its own move buffer and random generator.
+ */
+public class ParallelMonteCarloTreeSearch implements TreeSearch {
+
+	/** Statistics increment of a visit (number of visits in the high 32 bits) */
+	static final long ONE_VISIT = 1L << 32;
+
+	/** Mask of the number of half wins in the statistics */
+	static final long HALF_WINS_MASK = 0xFFFFFFFFL;
+
+	/**
+	 * A node of the shared tree
+	 */
+	static final class Node {
+		/** The code of the move leading from the parent node to this node (see {@link Game#generateMoves(MoveBuffer)}) */
+		final long code;
+
+		/**
+		 * The statistics of the node, seen from the player who played the move leading to this node:
+		 * number of visits (high 32 bits) and number of half wins, a draw counting as one half win (low 32 bits)
+		 */
+		volatile long stats;
+
+		/** The children of the node, <code>null</code> until the node is expanded (empty for a finished game) */
+		volatile Node[] children;
+
+		Node(long code) {
+			this.code = code;
+		}
+
+		/** @return The number of visits of the node (including the running ones) */
+		int visits() {
+			return (int) (stats >>> 32);
+		}
+
+		/** @return The number of wins of the node, a draw counting as a half win */
+		double wins() {
+			return (stats & HALF_WINS_MASK) / 2.0;
+		}
+	}
+
+	private static final AtomicLongFieldUpdater<Node> STATS =
+			AtomicLongFieldUpdater.newUpdater(Node.class, "stats");
+
+	private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+
+	/**
+	 * The state of a worker thread: its copy of the game state and its reusable buffers
+	 */
+	final class Worker implements Runnable {
+		/** The game state, back to the root state between two MCTS steps */
+		final Game game;
+
+		/** The random generator of the worker */
+		final SplittableRandom random;
+
+		/** The move buffer of the expansions and rollouts */
+		final MoveBuffer moves = new MoveBuffer();
+
+		/** The nodes visited by the current step, from the root */
+		Node[] path = new Node[64];
+
+		/** For each visited node, the player who played the move leading to it */
+		PlayerId[] movers = new PlayerId[64];
+
+		/** The time when the worker stops, given by {@link System#nanoTime()} */
+		long deadlineNanos;
+
+		/** The number of visits of the root when the worker stops */
+		int maxRootVisits;
+
+		/** The CPU time after which the worker stops, in nanoseconds (negative for no CPU time budget) */
+		long cpuTimeNanos;
+
+		Worker(SplittableRandom random, long deadlineNanos, int maxRootVisits, long cpuTimeNanos) {
+			this.game = rootGame.clone();
+			this.random = random;
+			this.deadlineNanos = deadlineNanos;
+			this.maxRootVisits = maxRootVisits;
+			this.cpuTimeNanos = cpuTimeNanos;
+		}
+
+		@Override
+		public void run() {
+			ThreadMXBean threads = (cpuTimeNanos >= 0) ? ManagementFactory.getThreadMXBean() : null;
+			long startCpuTime = (threads != null) ? threads.getCurrentThreadCpuTime() : 0;
+			int nbSteps = 0;
+			while (System.nanoTime() - deadlineNanos < 0 && root.visits() < maxRootVisits) {
+				evaluateTreeOnce();
+				if (threads != null && ++nbSteps % MonteCarloTreeSearch.SETTLED_CHECK_PERIOD == 0
+						&& threads.getCurrentThreadCpuTime() - startCpuTime >= cpuTimeNanos)
+					break;
+			}
+		}
+
+		/**
+		 * Perform one MCTS step on the shared tree
+		 */
+		void evaluateTreeOnce() {
+			int depth = 0;
+			Node node = root;
+			STATS.getAndAdd(node, ONE_VISIT);
+			visit(depth++, node, game.player().other());
+
+			// Selection (with UCT tree policy), walking the game state down the tree
+			Node[] children;
+			while ((children = node.children) != null && children.length > 0) {
+				node = select(node, children);
+				STATS.getAndAdd(node, ONE_VISIT);
+				PlayerId mover = game.player();
+				game.playUnchecked(node.code);
+				visit(depth++, node, mover);
+			}
+
+			// Expansion, and move to a random child
+			if (children == null) {
+				children = expand(node);
+				if (children.length > 0) {
+					node = children[random.nextInt(children.length)];
+					STATS.getAndAdd(node, ONE_VISIT);
+					PlayerId mover = game.player();
+					game.playUnchecked(node.code);
+					visit(depth++, node, mover);
+				}
+			}
+
+			// Simulation
+			PlayerId winner = interruptibleRollouts ? MonteCarloTreeSearch.playOutUntil(game, moves, random, deadlineNanos)
+					: MonteCarloTreeSearch.playOut(game, moves, random);
+			for (int i = 1; i < depth; ++i) {
+				game.unplay();
+			}
+			// An aborted playout is not counted: its visits are withdrawn
+			if (winner == null) {
+				for (int i = 0; i < depth; ++i) {
+					STATS.getAndAdd(path[i], -ONE_VISIT);
+				}
+				return;
+			}
+
+			// Backpropagation (the visits are already counted)
+			for (int i = 0; i < depth; ++i) {
+				long halfWins = (winner == PlayerId.NONE) ? 1 : (winner == movers[i] ? 2 : 0);
+				if (halfWins != 0)
+					STATS.getAndAdd(path[i], halfWins);
+			}
+		}
+
+		/**
+		 * Record a visited node
+		 */
+		private void visit(int depth, Node node, PlayerId mover) {
+			if (depth == path.length) {
+				path = Arrays.copyOf(path, 2 * depth);
+				movers = Arrays.copyOf(movers, 2 * depth);
+			}
+			path[depth] = node;
+			movers[depth] = mover;
+		}
+
+		/**
+		 * Select the child with the best UCT value (the unvisited children first)
+		 */
+		private Node select(Node parent, Node[] children) {
+			double logParentVisits = Math.log(Math.max(parent.visits(), 1));
+			Node best = children[0];
+			double bestUct = Double.NEGATIVE_INFINITY;
+			for (Node child : children) {
+				long stats = child.stats;
+				int n = (int) (stats >>> 32);
+				if (n == 0)
+					return child;
+				double uct = (stats & HALF_WINS_MASK) / (2.0 * n) + explorationConstant * Math.sqrt(logParentVisits / n);
+				if (uct > bestUct) {
+					bestUct = uct;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Expand a leaf in the current game state, or get the children published by another worker
+		 * @return The children of the node (empty if the game is finished)
+		 */
+		private Node[] expand(Node node) {
+			Node[] children;
+			if (game.winner() != null) {
+				children = new Node[0];
+			} else {
+				int nbMoves = game.generateMoves(moves);
+				children = new Node[nbMoves];
+				for (int i = 0; i < nbMoves; ++i) {
+					children[i] = new Node(moves.get(i));
+				}
+			}
+			if (CHILDREN.compareAndSet(node, null, children))
+				return children;
+			return node.children;
+		}
+	}
+
+	/** The root of the shared tree */
+	final Node root;
+
+	/** The game state of the root (never modified, the workers use copies) */
+	final Game rootGame;
+
+	/** The number of worker threads */
+	final int nbThreads;
+
+	/** The exploration constant of UCT */
+	double explorationConstant = MonteCarloTreeSearch.EXPLORATION_CONSTANT;
+
+	/** Whether the playouts are aborted at the deadline (hard deadline mode) */
+	boolean interruptibleRollouts;
+
+	/** The generator of the workers random generators */
+	final SplittableRandom random;
+
+	/**
+	 * Constructor of a search using all the available processors
+	 * @param game The game state to search (not modified)
+	 */
+	public ParallelMonteCarloTreeSearch(Game game) {
+		this(game, Runtime.getRuntime().availableProcessors(), new SplittableRandom());
+	}
+
+	/**
+	 * Constructor
+	 * @param game The game state to search (not modified)
+	 * @param nbThreads The number of worker threads sharing the tree
+	 * @param random The generator the workers random generators are split from
+	 */
+	public ParallelMonteCarloTreeSearch(Game game, int nbThreads, SplittableRandom random) {
+		this.rootGame = game.clone();
+		this.root = new Node(0);
+		this.nbThreads = Math.max(nbThreads, 1);
+		this.random = random;
+	}
+
+	/**
+	 * Enable or disable the hard deadline mode: the playouts are aborted at the deadline, and not counted
+	 * @param interruptibleRollouts <code>true</code> to abort the playouts at the deadline
+	 */
+	public void setInterruptibleRollouts(boolean interruptibleRollouts) {
+		this.interruptibleRollouts = interruptibleRollouts;
+	}
+
+	@Override
+	public void evaluateTreeWithTimeLimit(int timeLimitMillis) {
+		long startTime = System.nanoTime();
+		evaluateTreeUntil(startTime + TimeUnit.MILLISECONDS.toNanos(timeLimitMillis));
+		printSearchStats(startTime);
+	}
+
+	/**
+	 * Print the search time and the root statistics
+	 * @param startTime The time when the search started, given by {@link System#nanoTime()}
+	 */
+	void printSearchStats(long startTime) {
+		System.out.println("Stopped search after "
+		       + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms with " + nbThreads + " threads. "
+		       + "Root stats is " + root.wins() + "/" + root.visits()
+		       + String.format(" (%.2f%% loss)", 100.0 * root.wins() / root.visits()));
+	}
+
+	@Override
+	public void evaluateTreeUntil(long deadlineNanos) {
+		runWorkers(deadlineNanos, Integer.MAX_VALUE, -1);
+	}
+
+	/**
+	 * Evaluate the tree for a given number of playouts, shared by all the workers
+	 * (the number of playouts of each worker, hence the result, still depends on the scheduling of the threads)
+	 */
+	@Override
+	public void evaluateTreePlayouts(int nbPlayouts) {
+		runWorkers(MonteCarloTreeSearch.noDeadline(), (int) Math.min((long) root.visits() + nbPlayouts, Integer.MAX_VALUE), -1);
+	}
+
+	@Override
+	public void evaluateTreeCpuTime(long cpuTimeNanos) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadCpuTimeSupported()) {
+			evaluateTreeUntil(System.nanoTime() + cpuTimeNanos);
+			return;
+		}
+		if (!threads.isThreadCpuTimeEnabled())
+			threads.setThreadCpuTimeEnabled(true);
+		runWorkers(MonteCarloTreeSearch.noDeadline(), Integer.MAX_VALUE, cpuTimeNanos);
+	}
+
+	/**
+	 * Run the workers until their budget is exhausted, the calling thread being one of them
+	 * @param deadlineNanos The time when the workers stop, given by {@link System#nanoTime()}
+	 * @param maxRootVisits The number of visits of the root when the workers stop
+	 * @param cpuTimeNanos The CPU time budget of each worker, in nanoseconds (negative for none)
+	 */
+	private void runWorkers(long deadlineNanos, int maxRootVisits, long cpuTimeNanos) {
+		// Nothing to search in a finished game
+		if (rootGame.winner() != null)
+			return;
+		// Nor for a forced move
+		MoveBuffer moves = new MoveBuffer();
+		if (root.children == null && rootGame.generateMoves(moves) == 1) {
+			CHILDREN.compareAndSet(root, null, new Node[] { new Node(moves.get(0)) });
+			return;
+		}
+		Thread[] threads = new Thread[nbThreads - 1];
+		for (int i = 0; i < threads.length; ++i) {
+			Worker worker = new Worker(random.split(), deadlineNanos, maxRootVisits, cpuTimeNanos);
+			threads[i] = new Thread(worker, "MCTS-worker-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		// The calling thread is a worker too
+		Worker worker = new Worker(random.split(), deadlineNanos, maxRootVisits, cpuTimeNanos);
+		worker.run();
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			while (true) {
+				try {
+					thread.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Select the most visited move of the root
+	 */
+	@Override
+	public Move getBestMove() {
+		Node[] children = root.children;
+		if (children == null || children.length == 0)
+			return null;
+		Node best = children[0];
+		for (Node child : children) {
+			if (child.visits() > best.visits())
+				best = child;
+		}
+		return rootGame.decodeMove(best.code);
+	}
+
+	@Override
+	public String stats() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Parallel MCTS with ").append(root.visits()).append(" evals\n");
+		Node[] children = root.children;
+		if (children != null) {
+			for (Node child : children) {
+				sb.append(rootGame.decodeMove(child.code)).append(" : ").append(child.wins() / child.visits())
+				  .append(" (").append(child.wins()).append('/').append(child.visits()).append(")\n");
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,187 @@
+package fr.istic.ia.tp1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performance test of the move generation (perft): count the leaf nodes of the game tree
+ * explored to a fixed depth from a given state.
+ * The counts validate the move generation against reference values, and the nodes per second measure its speed.
+ * Finished games (see {@link Game#winner()}) are not explored further, so they count as 0 leaves
+ * unless the depth is reached.
+ *
+ * The exploration plays and unplays the moves on a single game state, with move codes generated in
+ * one {@link MoveBuffer} per depth, so it does not allocate. The parallel mode splits the tree on the root moves,
+ * each root move being counted on its own copy of the game in a fork-join pool.
+ */
+public class Perft {
+	/** The explored game state, back to its initial state after each count */
+	private final Game game;
+
+	/** The move buffers, one per depth */
+	private MoveBuffer[] buffers;
+
+	/**
+	 * Create a perft counter for a game state
+	 * @param game The game state to explore (played and unplayed back, so not modified by the counts)
+	 */
+	public Perft(Game game) {
+		this.game = game;
+		this.buffers = new MoveBuffer[0];
+	}
+
+	/**
+	 * Count the leaf nodes at a given depth
+	 * @param depth The number of plies to explore
+	 * @return The number of leaf nodes
+	 */
+	public long count(int depth) {
+		if (buffers.length < depth) {
+			buffers = new MoveBuffer[depth];
+			for (int i = 0; i < depth; ++i) {
+				buffers[i] = new MoveBuffer();
+			}
+		}
+		return count(depth, 0);
+	}
+
+	/**
+	 * Recursive count of the leaf nodes
+	 * @param depth The remaining number of plies
+	 * @param ply The number of plies already played (index of the move buffer)
+	 * @return The number of leaf nodes
+	 */
+	private long count(int depth, int ply) {
+		if (depth == 0)
+			return 1;
+		if (game.winner() != null)
+			return 0;
+		MoveBuffer moves = buffers[ply];
+		int nbMoves = game.generateMoves(moves);
+		// No need to play the moves at the last ply
+		if (depth == 1)
+			return nbMoves;
+		long nodes = 0;
+		for (int i = 0; i < nbMoves; ++i) {
+			game.playUnchecked(moves.get(i));
+			nodes += count(depth - 1, ply + 1);
+			game.unplay();
+		}
+		return nodes;
+	}
+
+	/**
+	 * Count the leaf nodes at a given depth (single thread)
+	 * @param game The game state to explore (not modified)
+	 * @param depth The number of plies to explore
+	 * @return The number of leaf nodes
+	 */
+	public static long perft(Game game, int depth) {
+		return new Perft(game.clone()).count(depth);
+	}
+
+	/**
+	 * Count the leaf nodes at a given depth, counting each root move in parallel in the common fork-join pool
+	 * @param game The game state to explore (not modified)
+	 * @param depth The number of plies to explore
+	 * @return The number of leaf nodes
+	 */
+	public static long parallelPerft(Game game, int depth) {
+		return parallelPerft(game, depth, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Count the leaf nodes at a given depth, counting each root move in parallel
+	 * @param game The game state to explore (not modified)
+	 * @param depth The number of plies to explore
+	 * @param pool The fork-join pool running the counts
+	 * @return The number of leaf nodes
+	 */
+	public static long parallelPerft(Game game, int depth, ForkJoinPool pool) {
+		if (depth <= 1 || game.winner() != null)
+			return perft(game, depth);
+		return pool.invoke(new RootSplitTask(game.clone(), depth));
+	}
+
+	/**
+	 * Task splitting the count on the root moves: one subtask per move, each on its own copy of the game
+	 */
+	static class RootSplitTask extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		/** The game state to explore, owned by the task */
+		private final Game game;
+
+		/** The number of plies to explore */
+		private final int depth;
+
+		/** Whether to split on the moves of {@link #game} (root task), or count sequentially */
+		private final boolean split;
+
+		RootSplitTask(Game game, int depth) {
+			this(game, depth, true);
+		}
+
+		private RootSplitTask(Game game, int depth, boolean split) {
+			this.game = game;
+			this.depth = depth;
+			this.split = split;
+		}
+
+		@Override
+		protected Long compute() {
+			if (!split)
+				return new Perft(game).count(depth);
+			MoveBuffer moves = new MoveBuffer();
+			int nbMoves = game.generateMoves(moves);
+			List<RootSplitTask> subtasks = new ArrayList<RootSplitTask>(nbMoves);
+			for (int i = 0; i < nbMoves; ++i) {
+				Game child = game.clone();
+				child.playUnchecked(moves.get(i));
+				subtasks.add(new RootSplitTask(child, depth - 1, false));
+			}
+			long nodes = 0;
+			for (RootSplitTask subtask : invokeAll(subtasks)) {
+				nodes += subtask.join();
+			}
+			return nodes;
+		}
+	}
+
+	/**
+	 * Run perft to increasing depths and print the counts and the nodes per second.
+	 * Arguments (all optional): game (<code>draughts</code>, <code>bitboard</code> or <code>tictactoe</code>, default draughts),
+	 * maximum depth (default 8), board size for draughts (default 8), <code>parallel</code> to use the fork-join mode.
+	 * @param args The command line arguments
+	 */
+	public static void main(String[] args) {
+		String name = args.length > 0 ? args[0] : "draughts";
+		int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int boardSize = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		boolean parallel = args.length > 3 && args[3].equals("parallel");
+
+		Game game;
+		switch (name) {
+		case "tictactoe":
+			game = new TicTacToe();
+			break;
+		case "bitboard":
+			game = new BitboardDraughts();
+			break;
+		default:
+			game = new EnglishDraughts(boardSize);
+		}
+
+		System.out.println("Perft of " + game.getClass().getSimpleName() + (parallel ? " (parallel)" : ""));
+		for (int depth = 1; depth <= maxDepth; ++depth) {
+			long startTime = System.nanoTime();
+			long nodes = parallel ? parallelPerft(game, depth) : perft(game, depth);
+			long elapsed = Math.max(System.nanoTime() - startTime, 1);
+			System.out.println(String.format("depth %2d: %,15d nodes in %,8d ms, %,14.0f nodes/s",
+					depth, nodes, TimeUnit.NANOSECONDS.toMillis(elapsed), nodes * 1e9 / elapsed));
+		}
+	}
+}
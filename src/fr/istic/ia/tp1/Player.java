@@ -13,4 +13,12 @@ public interface Player {
 	 * @return The move ({@link Game.Move}) chosen by the user or the algorithm
 	 */
 	public Game.Move play(Game game);
+
+	/**
+	 * Tells the player that the game is over, e.g. to stop a search running on the opponent's time.
+	 * Does nothing by default.
+	 * @param game The final game state
+	 */
+	public default void gameOver(Game game) {
+	}
 }
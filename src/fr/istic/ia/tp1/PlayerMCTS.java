@@ -1,33 +1,455 @@
 package fr.istic.ia.tp1;
 
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
 /**
- * An implementation of {@link Player} that uses the MCTS algorithm
+ * An implementation of {@link Player} that uses the MCTS algorithm.
+ * With several threads, the search is either:
+ * - root-parallel ({@link Parallelism#ROOT}): each thread builds its own tree from the game state
+ *   with its own random generator, and the root statistics of all the trees are merged to choose the move;
+ * - tree-parallel ({@link Parallelism#TREE}): all the threads share a single tree, see {@link ParallelMonteCarloTreeSearch};
+ * - leaf-parallel ({@link Parallelism#LEAF}): a single tree, with a batch of parallel playouts from each new leaf,
+ *   see {@link RolloutExecutor}.
+ * The single-tree searches keep their tree from one move to the next, and continue from the subtree
+ * of the new game state (see {@link MonteCarloTreeSearch#advanceTo(Game)}).
+ * They can also ponder: after returning its move, the player keeps searching from the resulting state
+ * on a background thread, until it is asked for its next move or told that the game is over ({@link #gameOver(Game)}).
+ *
+ * The time allowed for a move is not always spent: the search returns immediately for a forced move, and stops
+ * once its best move cannot be overtaken anymore. The single-tree searches put the time saved in a time bank,
+ * and draw on it to search longer when the best move is unstable (see {@link MonteCarloTreeSearch#isUnstable()}),
+ * so that a game never takes more than the time allowed per move plus the extra time per game.
+ * The bank holds at most the extra time per game, and is refilled for each game ({@link #gameOver(Game)}).
+ *
+ * With a latency bound ({@link #setLatencyBound(int)}), the player returns each move within a hard deadline:
+ * the search stops a margin before the bound, and its playouts are aborted at the deadline.
+ *
+ * Instead of the wall-clock time, the search can be given a number of playouts ({@link #setPlayoutBudget(int)})
+ * or a CPU time per thread ({@link #setCpuTimeBudget(int)}), so that its cost does not depend on the load of the machine.
+ *
+ * The single-tree and root-parallel searches can share the nodes of the transposed game states
+ * ({@link #setTranspositionTableSize(int)}), see {@link MonteCarloTreeSearch#setTranspositionTableSize(int)}.
+ * They can also share their results through a {@link SharedTranspositionTable} ({@link #setSharedTable(SharedTranspositionTable)}),
+ * e.g. between the trees of a root-parallel search, from one move to the next, or with the other player.
  * @author vdrevell
  *
  */
 public class PlayerMCTS implements Player {
-	
+
+	/**
+	 * The ways to run the search on several threads
+	 */
+	public static enum Parallelism {
+		/** One independent tree per thread, merged at the end of the search */
+		ROOT,
+		/** One tree shared by all the threads */
+		TREE,
+		/** One tree, with one playout per thread from each new leaf */
+		LEAF
+	}
+
 	private int timeAllowedMillis;
-	
+
+	/** The number of threads (independent trees) of the search */
+	private int nbThreads;
+
+	/** How the threads share the search */
+	private Parallelism parallelism;
+
+	/** The generator of the seeds of the trees random generators */
+	private SplittableRandom random = new SplittableRandom();
+
+	/** The number of playouts per move (0 to use the time budgets) */
+	private int playoutBudget;
+
+	/** The CPU time per move of each search thread, in milliseconds (0 to use the wall-clock time) */
+	private int cpuTimeBudgetMillis;
+
+	/**
+	 * The single-tree search (single-threaded or leaf-parallel), kept from one move to the next:
+	 * the subtree of the new game state is reused, with its statistics
+	 */
+	MonteCarloTreeSearch search;
+
+	/** The maximum number of nodes of the trees of the player, shared by the trees of a root-parallel search */
+	private int nodeBudget = MonteCarloTreeSearch.defaultNodeBudget();
+
+	/** The number of entries of the transposition table, shared by the trees of a root-parallel search (0 to search trees) */
+	private int transpositionTableSize;
+
+	/** The results shared by the searches of the player, <code>null</code> if they are not shared */
+	private SharedTranspositionTable sharedTable;
+
+	/** The extra time per game, the maximum of {@link #timeBankNanos}, in nanoseconds */
+	private long extraTimePerGameNanos;
+
+	/** The time saved on the previous moves plus the extra time left for the game, in nanoseconds */
+	long timeBankNanos;
+
+	/** The maximum time to return a move, in milliseconds (0 for no bound) */
+	private int latencyBoundMillis;
+
+	/** The number of moves played */
+	private int nbMoves;
+
+	/** The number of moves returned past the deadline by more than half the safety margin, i.e. close to the latency bound */
+	private int nbMovesNearBound;
+
+	/** The longest time taken to return a move, in nanoseconds */
+	private long maxLatencyNanos;
+
+	/** Whether the player searches on the opponent's time */
+	private boolean pondering;
+
+	/** The thread searching on the opponent's time, <code>null</code> when not pondering */
+	Thread ponderThread;
+
 	/**
 	 * Default constructor, sets a computation timeout of 1000 ms.
 	 */
 	public PlayerMCTS() {
 		this(1000);
 	}
-	
+
 	/**
 	 * Constructor with ability to set the maximum allowed computation time
 	 * @param timeAllowedMillis: allowed computation time, in milliseconds.
 	 */
 	public PlayerMCTS(int timeAllowedMillis) {
+		this(timeAllowedMillis, 1);
+	}
+
+	/**
+	 * Constructor with ability to set the maximum allowed computation time and the number of threads
+	 * @param timeAllowedMillis: allowed computation time, in milliseconds.
+	 * @param nbThreads: number of threads, each one running an independent tree (root parallelization).
+	 */
+	public PlayerMCTS(int timeAllowedMillis, int nbThreads) {
+		this(timeAllowedMillis, nbThreads, Parallelism.ROOT);
+	}
+
+	/**
+	 * Constructor with ability to set the maximum allowed computation time, the number of threads, and how they share the search
+	 * @param timeAllowedMillis: allowed computation time, in milliseconds.
+	 * @param nbThreads: number of threads.
+	 * @param parallelism: root-parallel (one tree per thread), tree-parallel (shared tree) or leaf-parallel (parallel playouts) search.
+	 */
+	public PlayerMCTS(int timeAllowedMillis, int nbThreads, Parallelism parallelism) {
 		this.timeAllowedMillis = timeAllowedMillis;
+		this.nbThreads = Math.max(nbThreads, 1);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Bound the memory of the search (not for the tree-parallel search), see {@link MonteCarloTreeSearch#setNodeBudget(int)}
+	 * @param maxNodes The maximum number of nodes of the trees
+	 */
+	public void setNodeBudget(int maxNodes) {
+		nodeBudget = maxNodes;
+		if (search != null)
+			search.setNodeBudget(maxNodes);
+	}
+
+	/**
+	 * Search graphs of game states instead of trees (not for the tree-parallel search),
+	 * see {@link MonteCarloTreeSearch#setTranspositionTableSize(int)}
+	 * @param nbEntries The number of entries of the transposition table (0 to search trees)
+	 */
+	public void setTranspositionTableSize(int nbEntries) {
+		transpositionTableSize = nbEntries;
+		if (search != null)
+			search.setTranspositionTableSize(nbEntries);
+	}
+
+	/**
+	 * Share the results of the searches through a table (not for the tree-parallel search, whose threads already share their tree),
+	 * see {@link MonteCarloTreeSearch#setSharedTable(SharedTranspositionTable)}. The table can be shared with other players.
+	 * @param table The shared table, <code>null</code> to stop sharing
+	 */
+	public void setSharedTable(SharedTranspositionTable table) {
+		sharedTable = table;
+		if (search != null)
+			search.setSharedTable(table);
+	}
+
+	/**
+	 * Search a fixed number of playouts per move instead of a time, see {@link MonteCarloTreeSearch#evaluateTreePlayouts(int)}.
+	 * The playouts are shared by the trees of a root-parallel search.
+	 * @param nbPlayouts The number of playouts per move (0 to use the time budgets)
+	 */
+	public void setPlayoutBudget(int nbPlayouts) {
+		playoutBudget = nbPlayouts;
+	}
+
+	/**
+	 * Search for a given CPU time per move and per search thread instead of a wall-clock time,
+	 * see {@link MonteCarloTreeSearch#evaluateTreeCpuTime(long)}
+	 * @param cpuTimeMillis The CPU time per move, in milliseconds (0 to use the wall-clock time)
+	 */
+	public void setCpuTimeBudget(int cpuTimeMillis) {
+		cpuTimeBudgetMillis = cpuTimeMillis;
+	}
+
+	/**
+	 * Seed the random generators of the searches, to replay the same games with a playout budget.
+	 * Must be called before the first move.
+	 * @param seed The seed
+	 */
+	public void setSeed(long seed) {
+		random = new SplittableRandom(seed);
 	}
-	
+
+	/**
+	 * Run a search with the playout or CPU time budget of the player, or else until a deadline
+	 * @param search The search to run
+	 * @param deadline The time when the search stops without playout or CPU time budget, given by {@link System#nanoTime()}
+	 * @param nbPlayouts The number of playouts of this search with a playout budget
+	 */
+	private void runSearch(TreeSearch search, long deadline, int nbPlayouts) {
+		if (playoutBudget > 0)
+			search.evaluateTreePlayouts(nbPlayouts);
+		else if (cpuTimeBudgetMillis > 0)
+			search.evaluateTreeCpuTime(TimeUnit.MILLISECONDS.toNanos(cpuTimeBudgetMillis));
+		else
+			search.evaluateTreeUntil(deadline);
+	}
+
+	/**
+	 * Give the player some extra time for the game, which it spends on the unstable positions
+	 * on top of the time saved on the other moves. The time saved is only kept up to this extra time.
+	 * @param extraMillis The extra time for each game, in milliseconds
+	 */
+	public void setExtraTimePerGame(int extraMillis) {
+		extraTimePerGameNanos = TimeUnit.MILLISECONDS.toNanos(extraMillis);
+		timeBankNanos = extraTimePerGameNanos;
+	}
+
+	/**
+	 * Bound the time taken to return a move (hard deadline mode). The search stops a safety margin before the bound
+	 * (a tenth of the bound, at least 1 ms), and its playouts are aborted at that deadline and not counted.
+	 * The moves returned close to the bound anyway (e.g. because of a garbage collection) are counted,
+	 * see {@link #latencyStats()}.
+	 * @param maxMillis The maximum time to return a move, in milliseconds (0 for no bound)
+	 */
+	public void setLatencyBound(int maxMillis) {
+		latencyBoundMillis = maxMillis;
+		if (search != null)
+			search.setInterruptibleRollouts(maxMillis > 0);
+	}
+
+	/**
+	 * Get the latency statistics of the moves played so far
+	 * @return A string with the number of moves, the longest latency and the number of moves close to the bound
+	 */
+	public String latencyStats() {
+		return nbMoves + " moves, max latency " + TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos) + " ms, "
+				+ nbMovesNearBound + " close to the " + latencyBoundMillis + " ms bound";
+	}
+
+	/**
+	 * @return The number of moves returned close to the latency bound
+	 */
+	public int nbMovesNearLatencyBound() {
+		return nbMovesNearBound;
+	}
+
+	/**
+	 * @return The safety margin between the search deadline and the latency bound, in nanoseconds
+	 */
+	private long latencyMarginNanos() {
+		return Math.max(TimeUnit.MILLISECONDS.toNanos(latencyBoundMillis) / 10, TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	/**
+	 * Get the time when the search must stop, given the time allowed and the latency bound
+	 * @param startTime The time when the move was asked, given by {@link System#nanoTime()}
+	 * @param searchNanos The search time wanted
+	 * @return The deadline of the search, given by {@link System#nanoTime()}
+	 */
+	private long deadline(long startTime, long searchNanos) {
+		if (latencyBoundMillis <= 0)
+			return startTime + searchNanos;
+		long maxNanos = TimeUnit.MILLISECONDS.toNanos(latencyBoundMillis) - latencyMarginNanos();
+		return startTime + Math.min(searchNanos, maxNanos);
+	}
+
+	/**
+	 * Record the latency of a move
+	 * @param startTime The time when the move was asked, given by {@link System#nanoTime()}
+	 */
+	private void recordLatency(long startTime) {
+		long latency = System.nanoTime() - startTime;
+		nbMoves++;
+		maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+		if (latencyBoundMillis > 0
+				&& latency > TimeUnit.MILLISECONDS.toNanos(latencyBoundMillis) - latencyMarginNanos() / 2) {
+			nbMovesNearBound++;
+			System.out.println("Move returned after " + TimeUnit.NANOSECONDS.toMillis(latency) + " ms, close to the "
+					+ latencyBoundMillis + " ms bound (" + latencyStats() + ")");
+		}
+	}
+
+	/**
+	 * Search the best move with the time allowed for a move, adjusted with the time bank
+	 * @param startTime The time when the move was asked, given by {@link System#nanoTime()}
+	 */
+	private void searchWithTimeBank(long startTime) {
+		long timeAllowedNanos = TimeUnit.MILLISECONDS.toNanos(timeAllowedMillis);
+		long deadline = deadline(startTime, timeAllowedNanos);
+		search.evaluateTreeUntil(deadline);
+		// Search longer in an unstable position, up to twice the time allowed, by quarters of the time allowed
+		long maxDeadline = deadline(startTime, timeAllowedNanos + Math.min(timeBankNanos, timeAllowedNanos));
+		while (search.isUnstable() && maxDeadline - deadline > 0 && System.nanoTime() - deadline >= 0) {
+			deadline = Math.min(deadline + timeAllowedNanos / 4, maxDeadline);
+			search.evaluateTreeUntil(deadline);
+		}
+		timeBankNanos += timeAllowedNanos - (System.nanoTime() - startTime);
+		timeBankNanos = Math.max(Math.min(timeBankNanos, extraTimePerGameNanos), 0);
+		search.printSearchStats(startTime);
+	}
+
+	/**
+	 * Enable or disable pondering (only for the single-threaded and leaf-parallel searches)
+	 * @param pondering <code>true</code> to keep searching on the opponent's time
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+		if (!pondering)
+			stopPondering();
+	}
+
+	/**
+	 * Stop the background search, and wait for its thread to end. The tree can be used again when this returns.
+	 */
+	public void stopPondering() {
+		if (ponderThread == null)
+			return;
+		search.stop();
+		joinUninterruptibly(ponderThread);
+		ponderThread = null;
+	}
+
+	/**
+	 * Start searching on the opponent's time from the state after our move
+	 * @param game The state before our move
+	 * @param move Our move
+	 */
+	private void startPondering(Game game, Game.Move move) {
+		Game next = game.clone();
+		next.play(move);
+		if (next.winner() != null)
+			return;
+		search.advanceTo(next);
+		ponderThread = new Thread(search::ponder, "MCTS-ponder");
+		ponderThread.setDaemon(true);
+		ponderThread.start();
+	}
+
+	/**
+	 * Wait for the end of a thread, even if the current thread is interrupted meanwhile (the interruption is kept)
+	 * @param thread The thread to wait for
+	 */
+	private static void joinUninterruptibly(Thread thread) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				thread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Stop pondering, as there is no next move to search for, and refill the time bank for the next game
+	 */
+	@Override
+	public void gameOver(Game game) {
+		stopPondering();
+		timeBankNanos = extraTimePerGameNanos;
+	}
+
 	@Override
 	public Game.Move play(Game game) {
-		MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game);
-		mcts.evaluateTreeWithTimeLimit(timeAllowedMillis);
-		return mcts.getBestMove();
+		long startTime = System.nanoTime();
+		Game.Move move = chooseMove(game, startTime);
+		recordLatency(startTime);
+		return move;
+	}
+
+	/**
+	 * Search the move to play
+	 * @param game The game state from which to play
+	 * @param startTime The time when the move was asked, given by {@link System#nanoTime()}
+	 * @return The move chosen by the search
+	 */
+	private Game.Move chooseMove(Game game, long startTime) {
+		// The background search is stopped before the tree is touched again by this thread
+		stopPondering();
+		if (sharedTable != null)
+			sharedTable.newSearch();
+		if (nbThreads == 1 || parallelism != Parallelism.ROOT) {
+			TreeSearch search;
+			if (parallelism == Parallelism.TREE && nbThreads > 1) {
+				ParallelMonteCarloTreeSearch parallelSearch = new ParallelMonteCarloTreeSearch(game, nbThreads, random.split());
+				parallelSearch.setInterruptibleRollouts(latencyBoundMillis > 0);
+				search = parallelSearch;
+			} else {
+				if (this.search == null) {
+					this.search = new MonteCarloTreeSearch(game, random.split(),
+							nbThreads == 1 ? null : new RolloutExecutor(nbThreads));
+					this.search.setNodeBudget(nodeBudget);
+					this.search.setTranspositionTableSize(transpositionTableSize);
+					this.search.setSharedTable(sharedTable);
+					this.search.setInterruptibleRollouts(latencyBoundMillis > 0);
+				} else
+					this.search.advanceTo(game);
+				search = this.search;
+			}
+			if (search == this.search && playoutBudget <= 0 && cpuTimeBudgetMillis <= 0) {
+				searchWithTimeBank(startTime);
+			} else {
+				runSearch(search, deadline(startTime, TimeUnit.MILLISECONDS.toNanos(timeAllowedMillis)), playoutBudget);
+				if (search == this.search)
+					this.search.printSearchStats(startTime);
+				else
+					((ParallelMonteCarloTreeSearch) search).printSearchStats(startTime);
+			}
+			Game.Move move = search.getBestMove();
+			if (pondering && search == this.search && move != null)
+				startPondering(game, move);
+			return move;
+		}
+
+		// Run the trees until the same deadline, one per thread
+		final long deadline = deadline(startTime, TimeUnit.MILLISECONDS.toNanos(timeAllowedMillis));
+		final MonteCarloTreeSearch[] trees = new MonteCarloTreeSearch[nbThreads];
+		Thread[] threads = new Thread[nbThreads];
+		for (int i = 0; i < nbThreads; ++i) {
+			final MonteCarloTreeSearch mcts = new MonteCarloTreeSearch(game, random.split());
+			mcts.setNodeBudget(nodeBudget / nbThreads);
+			mcts.setTranspositionTableSize(transpositionTableSize / nbThreads);
+			mcts.setSharedTable(sharedTable);
+			mcts.setInterruptibleRollouts(latencyBoundMillis > 0);
+			trees[i] = mcts;
+			final int nbPlayouts = playoutBudget / nbThreads + (i < playoutBudget % nbThreads ? 1 : 0);
+			threads[i] = new Thread(() -> runSearch(mcts, deadline, nbPlayouts), "MCTS-" + i);
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			joinUninterruptibly(thread);
+		}
+
+		// Merge the root statistics in the first tree
+		for (int i = 1; i < nbThreads; ++i) {
+			trees[0].mergeRootStats(trees[i]);
+		}
+		trees[0].printSearchStats(startTime);
+		return trees[0].getBestMove();
 	}
 }
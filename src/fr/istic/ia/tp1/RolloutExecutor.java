@@ -0,0 +1,125 @@
+package fr.istic.ia.tp1;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import fr.istic.ia.tp1.Game.PlayerId;
+import fr.istic.ia.tp1.MonteCarloTreeSearch.RolloutResults;
+
+/**
+ * Runs a batch of independent random playouts from a leaf in parallel, on a shared {@link ForkJoinPool}
+ * (leaf parallelization). Each playout starts from its own copy of the leaf state, and the results
+ * are combined with {@link RolloutResults#add(RolloutResults)}.
+ * A batch gives a lower-variance estimate of the leaf for about the cost of a single playout,
+ * using the cores left idle by the tree search.
+ */
+public class RolloutExecutor {
+	/** The move buffer of each pool thread, reused from one playout to the next */
+	private static final ThreadLocal<MoveBuffer> MOVES = ThreadLocal.withInitial(MoveBuffer::new);
+
+	/** The pool running the playouts */
+	private final ForkJoinPool pool;
+
+	/** The number of playouts per leaf */
+	private final int batchSize;
+
+	/**
+	 * Create an executor running on the common fork-join pool
+	 * @param batchSize The number of playouts per leaf
+	 */
+	public RolloutExecutor(int batchSize) {
+		this(ForkJoinPool.commonPool(), batchSize);
+	}
+
+	/**
+	 * Create an executor
+	 * @param pool The pool running the playouts, can be shared by several executors
+	 * @param batchSize The number of playouts per leaf
+	 */
+	public RolloutExecutor(ForkJoinPool pool, int batchSize) {
+		this.pool = pool;
+		this.batchSize = Math.max(batchSize, 1);
+	}
+
+	/**
+	 * @return The number of playouts per leaf
+	 */
+	public int batchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Run a batch of playouts from a leaf, and wait for their results
+	 * @param leaf The leaf state (not modified, the playouts use copies)
+	 * @param random The random generator of the caller, the playouts generators are split from it
+	 * @return The combined results of the playouts
+	 */
+	public RolloutResults rollOut(Game leaf, SplittableRandom random) {
+		return pool.invoke(new BatchTask(leaf, batchSize, random.split(), false, 0));
+	}
+
+	/**
+	 * Run a batch of playouts from a leaf, and wait for their results.
+	 * The playouts still running at a deadline are aborted, and not counted in the results.
+	 * @param leaf The leaf state (not modified, the playouts use copies)
+	 * @param random The random generator of the caller, the playouts generators are split from it
+	 * @param deadlineNanos The time when the playouts stop, given by {@link System#nanoTime()}
+	 * @return The combined results of the finished playouts
+	 */
+	public RolloutResults rollOutUntil(Game leaf, SplittableRandom random, long deadlineNanos) {
+		return pool.invoke(new BatchTask(leaf, batchSize, random.split(), true, deadlineNanos));
+	}
+
+	/**
+	 * Task running a range of playouts, split in halves down to single playouts
+	 */
+	static class BatchTask extends RecursiveTask<RolloutResults> {
+		private static final long serialVersionUID = 1L;
+
+		/** The leaf state, shared by the tasks of the batch and never modified */
+		private final Game leaf;
+
+		/** The number of playouts of the task */
+		private final int nbRuns;
+
+		/** The random generator of the task */
+		private final SplittableRandom random;
+
+		/** Whether the playouts are aborted at {@link #deadlineNanos} */
+		private final boolean interruptible;
+
+		/** The time when the playouts stop, given by {@link System#nanoTime()} */
+		private final long deadlineNanos;
+
+		BatchTask(Game leaf, int nbRuns, SplittableRandom random, boolean interruptible, long deadlineNanos) {
+			this.leaf = leaf;
+			this.nbRuns = nbRuns;
+			this.random = random;
+			this.interruptible = interruptible;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		@Override
+		protected RolloutResults compute() {
+			if (nbRuns == 1) {
+				RolloutResults results = new RolloutResults();
+				if (!interruptible) {
+					results.update(MonteCarloTreeSearch.playOut(leaf.clone(), MOVES.get(), random));
+				} else {
+					PlayerId winner = MonteCarloTreeSearch.playOutUntil(leaf.clone(), MOVES.get(), random, deadlineNanos);
+					if (winner != null)
+						results.update(winner);
+				}
+				return results;
+			}
+			// The generators are split before forking, as a generator belongs to a single thread
+			BatchTask left = new BatchTask(leaf, nbRuns / 2, random.split(), interruptible, deadlineNanos);
+			BatchTask right = new BatchTask(leaf, nbRuns - nbRuns / 2, random, interruptible, deadlineNanos);
+			left.fork();
+			RolloutResults results = right.compute();
+			results.add(left.join());
+			return results;
+		}
+	}
+}
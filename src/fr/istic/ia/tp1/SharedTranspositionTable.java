@@ -0,0 +1,284 @@
+package fr.istic.ia.tp1;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size cache of search results by game state, shared without locks by the threads of one or several searches
+ * (e.g. the trees of a root-parallel {@link PlayerMCTS}, see {@link MonteCarloTreeSearch#setSharedTable(SharedTranspositionTable)}).
+ *
+ * An entry is packed in a single <code>long</code>, in a power-of-two array without any object per entry:
+ * - the 16 high bits of the key of the state ({@link Game#hashKey()}), checked by the lookups
+ *   (the low bits of the key give the bucket of the entry);
+ * - the age of the entry, i.e. the search which last wrote it (4 bits);
+ * - a depth (6 bits) and a bound (2 bits), e.g. the remaining depth of an alpha-beta search and the kind of its score;
+ * - a value: the number of half wins of a MCTS, a draw counting as one half win, or the score of an alpha-beta search (19 bits);
+ * - a number of visits (17 bits). When it overflows, the visits and the half wins are halved, which keeps the win rate.
+ *
+ * The entries are updated with a compare-and-set: an update lost because another thread changed the entry meanwhile
+ * is detected by the failed compare-and-set, and retried on the new entry. A key only goes in one of the {@link #WAYS}
+ * entries of its bucket. When they are all taken, the entry of an older search is replaced first,
+ * then the one with the lowest depth, then the one with the fewest visits.
+ */
+public final class SharedTranspositionTable {
+	/** Number of entries of a bucket */
+	static final int WAYS = 4;
+
+	/** The bound of an entry without bound, e.g. stored by a MCTS */
+	public static final int BOUND_NONE = 0;
+
+	/** The bound of an exact score */
+	public static final int BOUND_EXACT = 1;
+
+	/** The bound of a score which is a lower bound (the search failed high) */
+	public static final int BOUND_LOWER = 2;
+
+	/** The bound of a score which is an upper bound (the search failed low) */
+	public static final int BOUND_UPPER = 3;
+
+	/** Maximum number of visits of an entry */
+	public static final int MAX_VISITS = (1 << 17) - 1;
+
+	/** Maximum depth of an entry */
+	public static final int MAX_DEPTH = (1 << 6) - 1;
+
+	/** Offset of the scores stored in the value field, which is unsigned */
+	private static final int SCORE_OFFSET = 1 << 18;
+
+	private static final int VISITS_SHIFT = 0;
+	private static final int VALUE_SHIFT = 17;
+	private static final int BOUND_SHIFT = 36;
+	private static final int DEPTH_SHIFT = 38;
+	private static final int AGE_SHIFT = 44;
+	private static final int CHECK_SHIFT = 48;
+
+	private static final long VISITS_MASK = MAX_VISITS;
+	private static final long VALUE_MASK = (1L << 19) - 1;
+	private static final long BOUND_MASK = 3;
+	private static final long DEPTH_MASK = MAX_DEPTH;
+	private static final long AGE_MASK = 15;
+
+	/** The entries, 0 for an empty entry */
+	private final AtomicLongArray entries;
+
+	/** Mask of a key giving its bucket */
+	private final int bucketMask;
+
+	/** The age of the current search */
+	private volatile int age;
+
+	/**
+	 * Create an empty table
+	 * @param sizeMB The size of the table in megabytes, rounded down to a power of 2 (at least one bucket)
+	 */
+	public SharedTranspositionTable(int sizeMB) {
+		long nbEntries = Math.max((long) sizeMB << 20, 8) / 8;
+		nbEntries = Math.min(Long.highestOneBit(nbEntries), 1 << 30);
+		entries = new AtomicLongArray((int) Math.max(nbEntries, WAYS));
+		bucketMask = entries.length() / WAYS - 1;
+	}
+
+	/**
+	 * @return The number of entries of the table
+	 */
+	public int capacity() {
+		return entries.length();
+	}
+
+	/**
+	 * Start a new search (e.g. for the next move of a game): the entries of the previous searches are kept,
+	 * but are replaced first when a bucket is full
+	 */
+	public void newSearch() {
+		age = (age + 1) & (int) AGE_MASK;
+	}
+
+	/**
+	 * Remove all the entries. The table must not be used by another thread meanwhile.
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length(); ++i) {
+			entries.set(i, 0);
+		}
+	}
+
+	/**
+	 * Get the key of a move in a state, to store the results of the move in the table
+	 * (the state reached by the move may have no cheap key before it is played)
+	 * @param stateKey The key of the state, see {@link Game#hashKey()}
+	 * @param moveCode The code of the move, see {@link Game#generateMoves(MoveBuffer)}
+	 * @return The key of the move
+	 */
+	public static long moveKey(long stateKey, long moveCode) {
+		long z = (moveCode + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return stateKey ^ z ^ (z >>> 31);
+	}
+
+	/**
+	 * Look for the entry of a key
+	 * @param key The key
+	 * @return The entry, to read with {@link #visits(long)}, {@link #wins(long)}, {@link #score(long)}, {@link #depth(long)}
+	 *         and {@link #bound(long)}, or 0 if the key is not in the table
+	 */
+	public long probe(long key) {
+		int first = bucket(key);
+		long check = key >>> CHECK_SHIFT;
+		for (int slot = first; slot < first + WAYS; ++slot) {
+			long entry = entries.get(slot);
+			if (entry != 0 && (entry >>> CHECK_SHIFT) == check)
+				return entry;
+		}
+		return 0;
+	}
+
+	/**
+	 * Add the results of some playouts to the entry of a key (a MCTS update), creating it if needed
+	 * @param key The key
+	 * @param nbVisits The number of playouts
+	 * @param nbWins The number of wins among the playouts, a draw counting as a half win
+	 */
+	public void addResults(long key, int nbVisits, double nbWins) {
+		int first = bucket(key);
+		long check = key >>> CHECK_SHIFT;
+		long halfWins = Math.round(2 * nbWins);
+		while (true) {
+			int victim = -1;
+			long victimEntry = 0;
+			for (int slot = first; slot < first + WAYS; ++slot) {
+				long entry = entries.get(slot);
+				if (entry != 0 && (entry >>> CHECK_SHIFT) == check) {
+					long visits = visits(entry) + nbVisits;
+					long value = ((entry >>> VALUE_SHIFT) & VALUE_MASK) + halfWins;
+					while (visits > MAX_VISITS) {
+						visits /= 2;
+						value /= 2;
+					}
+					if (entries.compareAndSet(slot, entry, pack(check, depth(entry), BOUND_NONE, value, visits)))
+						return;
+					// Lost to another update: retried on the new entry
+					victim = -2;
+					break;
+				}
+				if (victim == -1 || isBetterVictim(entry, victimEntry)) {
+					victim = slot;
+					victimEntry = entry;
+				}
+			}
+			if (victim >= 0 && entries.compareAndSet(victim, victimEntry,
+					pack(check, 0, BOUND_NONE, halfWins * Math.min(nbVisits, MAX_VISITS) / Math.max(nbVisits, 1),
+							Math.min(nbVisits, MAX_VISITS))))
+				return;
+		}
+	}
+
+	/**
+	 * Store the score of a state (an alpha-beta update), unless the entry of the key has a higher depth
+	 * @param key The key
+	 * @param depth The depth of the search of the state, at most {@link #MAX_DEPTH}
+	 * @param bound The kind of score: {@link #BOUND_EXACT}, {@link #BOUND_LOWER} or {@link #BOUND_UPPER}
+	 * @param score The score, between <code>-2^18</code> and <code>2^18-1</code>
+	 */
+	public void store(long key, int depth, int bound, int score) {
+		int first = bucket(key);
+		long check = key >>> CHECK_SHIFT;
+		long entry = pack(check, Math.min(depth, MAX_DEPTH), bound, score + SCORE_OFFSET, 0);
+		while (true) {
+			int victim = -1;
+			long victimEntry = 0;
+			for (int slot = first; slot < first + WAYS; ++slot) {
+				long old = entries.get(slot);
+				if (old != 0 && (old >>> CHECK_SHIFT) == check) {
+					if (depth(old) > depth && age(old) == age)
+						return;
+					victim = slot;
+					victimEntry = old;
+					break;
+				}
+				if (victim == -1 || isBetterVictim(old, victimEntry)) {
+					victim = slot;
+					victimEntry = old;
+				}
+			}
+			if (entries.compareAndSet(victim, victimEntry, entry))
+				return;
+		}
+	}
+
+	/**
+	 * Get the part of the table in use, from a sample of its first entries
+	 * @return The number of entries written by the current search per thousand entries
+	 */
+	public int usagePerMill() {
+		int nbSamples = Math.min(entries.length(), 1000);
+		int used = 0;
+		for (int i = 0; i < nbSamples; ++i) {
+			long entry = entries.get(i);
+			if (entry != 0 && age(entry) == age)
+				used++;
+		}
+		return used * 1000 / nbSamples;
+	}
+
+	/** @return The number of visits of an entry */
+	public static int visits(long entry) {
+		return (int) ((entry >>> VISITS_SHIFT) & VISITS_MASK);
+	}
+
+	/** @return The number of wins of an entry stored by {@link #addResults(long, int, double)} */
+	public static double wins(long entry) {
+		return ((entry >>> VALUE_SHIFT) & VALUE_MASK) / 2.0;
+	}
+
+	/** @return The score of an entry stored by {@link #store(long, int, int, int)} */
+	public static int score(long entry) {
+		return (int) ((entry >>> VALUE_SHIFT) & VALUE_MASK) - SCORE_OFFSET;
+	}
+
+	/** @return The depth of an entry */
+	public static int depth(long entry) {
+		return (int) ((entry >>> DEPTH_SHIFT) & DEPTH_MASK);
+	}
+
+	/** @return The bound of an entry, {@link #BOUND_NONE} for the results of a MCTS */
+	public static int bound(long entry) {
+		return (int) ((entry >>> BOUND_SHIFT) & BOUND_MASK);
+	}
+
+	/** @return The age of an entry */
+	static int age(long entry) {
+		return (int) ((entry >>> AGE_SHIFT) & AGE_MASK);
+	}
+
+	/**
+	 * @return The index of the first entry of the bucket of a key
+	 */
+	private int bucket(long key) {
+		return ((int) key & bucketMask) * WAYS;
+	}
+
+	/**
+	 * Pack the fields of an entry of the current search
+	 */
+	private long pack(long check, long depth, long bound, long value, long visits) {
+		return (check << CHECK_SHIFT) | ((long) age << AGE_SHIFT) | (depth << DEPTH_SHIFT) | (bound << BOUND_SHIFT)
+				| ((value & VALUE_MASK) << VALUE_SHIFT) | (visits << VISITS_SHIFT);
+	}
+
+	/**
+	 * Check if an entry should be replaced before another one: empty, then from an older search,
+	 * then with a lower depth, then with fewer visits
+	 */
+	private boolean isBetterVictim(long entry, long other) {
+		if (other == 0)
+			return false;
+		if (entry == 0)
+			return true;
+		boolean old = age(entry) != age;
+		if (old != (age(other) != age))
+			return old;
+		if (depth(entry) != depth(other))
+			return depth(entry) < depth(other);
+		return visits(entry) < visits(other);
+	}
+}
@@ -0,0 +1,87 @@
+package fr.istic.ia.tp1;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static java.util.Arrays.asList;
+
+public class TestBitboardDraughts {
+	/**
+	 * Check that both implementations generate the same moves, in the same order, and agree on the winner
+	 */
+	static void assertSameGame(EnglishDraughts draughts, BitboardDraughts bitboard) {
+		assertEquals("Same position", draughts.toString(), bitboard.toString());
+		assertEquals("Same moves in " + draughts, draughts.possibleMoves(), bitboard.possibleMoves());
+		assertEquals("Same winner in " + draughts, draughts.winner(), bitboard.winner());
+	}
+
+	@Test
+	public void testPossibleMovesInit() {
+		assertSameGame(new EnglishDraughts(8), new BitboardDraughts());
+	}
+
+	@Test
+	public void testPossibleMovesMultipleTake() {
+		EnglishDraughts draughts = new EnglishDraughts(8);
+		TestEnglishDraughts.setBoard(draughts.board, asList(18,19), asList(1), asList(6,8,15), asList(7));
+		BitboardDraughts bitboard = new BitboardDraughts(draughts);
+		assertSameGame(draughts, bitboard);
+		assertEquals("Notation", "1x10x3x12", bitboard.possibleMoves().get(0).toString());
+	}
+
+	@Test
+	public void testPlayMultipleTakeCrown() {
+		EnglishDraughts draughts = new EnglishDraughts(8);
+		TestEnglishDraughts.setBoard(draughts.board, asList(18,19), asList(10), asList(6,8,15), asList(7));
+		BitboardDraughts bitboard = new BitboardDraughts(draughts);
+		bitboard.play(bitboard.possibleMoves().get(3));
+		assertEquals("Crowned after 18x11x4", "2. B:WK4,K10,19:B6,K7", bitboard.toString());
+	}
+
+	@Test
+	public void testSameRandomGames() {
+		Random random = new Random(42);
+		for (int game = 0; game < 50; ++game) {
+			EnglishDraughts draughts = new EnglishDraughts(8);
+			BitboardDraughts bitboard = new BitboardDraughts();
+			while (draughts.winner() == null) {
+				assertSameGame(draughts, bitboard);
+				List<Game.Move> moves = draughts.possibleMoves();
+				int chosen = random.nextInt(moves.size());
+				draughts.play(moves.get(chosen));
+				bitboard.play(bitboard.possibleMoves().get(chosen));
+			}
+			assertSameGame(draughts, bitboard);
+		}
+	}
+
+	@Test
+	public void testSameHashKeys() {
+		Random random = new Random(5);
+		for (int game = 0; game < 20; ++game) {
+			EnglishDraughts draughts = new EnglishDraughts(8);
+			BitboardDraughts bitboard = new BitboardDraughts();
+			long initialKey = draughts.hashKey();
+			int nbPlies = 0;
+			while (draughts.winner() == null) {
+				assertEquals("Hash key of " + draughts, bitboard.hashKey(), draughts.hashKey());
+				// The conversion computes the key from scratch
+				assertEquals("Incremental key of " + draughts, new BitboardDraughts(draughts).hashKey(), bitboard.hashKey());
+				List<Game.Move> moves = draughts.possibleMoves();
+				int chosen = random.nextInt(moves.size());
+				draughts.play(moves.get(chosen));
+				bitboard.play(bitboard.possibleMoves().get(chosen));
+				nbPlies++;
+			}
+			for (int i = 0; i < nbPlies; ++i) {
+				draughts.unplay();
+				bitboard.unplay();
+			}
+			assertEquals("Back to the initial key", initialKey, draughts.hashKey());
+			assertEquals("Back to the initial bitboard key", initialKey, bitboard.hashKey());
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package fr.istic.ia.tp1;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.HashSet;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -27,11 +29,7 @@ public class TestEnglishDraughts {
 	}
 	
 	static EnglishDraughts.DraughtsMove newMove(EnglishDraughts game, List<Integer> steps) {
-		EnglishDraughts.DraughtsMove move = game.new DraughtsMove();
-		for (int i : steps) {
-			move.add(i);
-		}
-		return move;
+		return EnglishDraughts.DraughtsMove.fromSquares(game.board.size, steps);
 	}
 	
 	@Test
@@ -132,7 +130,46 @@ public class TestEnglishDraughts {
 		assertEquals("Multiple take", new HashSet<Game.Move>(initMoves), new HashSet<Game.Move>(moves));
 		assertEquals("Duplicate moves", initMoves.size(), moves.size());
 	}
-	
+
+	@Test
+	public void testPossibleMovesKingTakesEachPawnOnce() {
+		EnglishDraughts draughts = new EnglishDraughts(8);
+		setBoard(draughts.board, asList(17,18,25,26,29,31), asList(10,11), asList(9), asList(16));
+		draughts.playerId = PlayerId.TWO;
+
+		// The king goes round 17, 25, 26 and 18 back to 14, and cannot take them a second time
+		List<Game.Move> initMoves = asList(
+				newMove(draughts, asList(16,7,14,21,30,23,14)),
+				newMove(draughts, asList(16,7,14,23,30,21,14)) );
+		List<Game.Move> moves = draughts.possibleMoves();
+
+		assertEquals("King loop", new HashSet<Game.Move>(initMoves), new HashSet<Game.Move>(moves));
+		assertEquals("Duplicate moves", initMoves.size(), moves.size());
+		assertEquals("Same moves with bitboards", moves, new BitboardDraughts(draughts).possibleMoves());
+	}
+
+	@Test
+	public void testPossibleMovesLongCapture() {
+		EnglishDraughts draughts = new EnglishDraughts(12);
+		// The king snakes through 5 rows of 5 pawns: 25 jumps, more than a packed move code holds
+		setBoard(draughts.board, asList(), asList(1), asList(8,9,10,11,12, 24,23,22,21,20, 32,33,34,35,36,
+				48,47,46,45,44, 56,57,58,59,60), asList());
+		List<Integer> trail = asList(1,14,3,16,5,18,29,16,27,14,25,38,27,40,29,42,53,40,51,38,49,62,51,64,53,66);
+		EnglishDraughts.DraughtsMove longMove = newMove(draughts, trail);
+		assertEquals("Jumps of the long capture", 25, EnglishDraughts.DraughtsMove.nbJumps(longMove.code));
+		assertEquals("Notation of the long capture", "1x14x3x16x5x18x29x16x27x14x25x38x27x40x29x42x53x40x51x38x49x62x51x64x53x66",
+				longMove.toString());
+
+		String initState = draughts.toString();
+		List<Game.Move> moves = draughts.possibleMoves();
+		assertTrue("Long capture in " + moves, moves.contains(longMove));
+		draughts.play(longMove);
+		assertEquals("All pawns taken", asList(), draughts.board.getBlackPawns());
+		assertEquals("King at the end of the capture", asList(66), draughts.board.getWhitePawns());
+		draughts.unplay();
+		assertEquals("Unplay the long capture", initState, draughts.toString());
+	}
+
 	@Test
 	public void testWinner() {
 		EnglishDraughts draughts = new EnglishDraughts(8);
@@ -191,4 +228,118 @@ public class TestEnglishDraughts {
 		assertTrue("Remove adversary from 8", draughts.board.isEmpty(8));
 		assertEquals("Finish in 4 and get crowned", CheckerBoard.WHITE_KING, draughts.board.get(4));
 	}
+	
+	@Test
+	public void testUnplayRestoresState() {
+		Random random = new Random(7);
+		for (int size = 6; size <= 10; size += 2) {
+			EnglishDraughts draughts = new EnglishDraughts(size);
+			List<String> states = new ArrayList<String>();
+			List<Integer> kingMoves = new ArrayList<Integer>();
+			while (draughts.winner() == null) {
+				states.add(draughts.toString());
+				kingMoves.add(draughts.nbKingMovesWithoutCapture);
+				List<Game.Move> moves = draughts.possibleMoves();
+				draughts.play(moves.get(random.nextInt(moves.size())));
+			}
+			for (int i = states.size() - 1; i >= 0; --i) {
+				draughts.unplay();
+				assertEquals("Unplay to ply " + i, states.get(i), draughts.toString());
+				assertEquals("King moves counter at ply " + i, kingMoves.get(i).intValue(), draughts.nbKingMovesWithoutCapture);
+			}
+		}
+	}
+	
+	@Test
+	public void testPawnSetsFollowBoard() {
+		Random random = new Random(11);
+		EnglishDraughts draughts = new EnglishDraughts(10);
+		int nbPlies = 0;
+		while (draughts.winner() == null) {
+			List<Integer> whites = new ArrayList<Integer>();
+			List<Integer> blacks = new ArrayList<Integer>();
+			for (int square = 1; square <= draughts.board.nbPlayableTiles(); ++square) {
+				if (draughts.board.isWhite(square))
+					whites.add(square);
+				else if (draughts.board.isBlack(square))
+					blacks.add(square);
+			}
+			assertEquals("White pawns in " + draughts, whites, draughts.board.getWhitePawns());
+			assertEquals("Black pawns in " + draughts, blacks, draughts.board.getBlackPawns());
+			List<Game.Move> moves = draughts.possibleMoves();
+			draughts.play(moves.get(random.nextInt(moves.size())));
+			nbPlies++;
+		}
+		for (int i = 0; i < nbPlies; ++i) {
+			draughts.unplay();
+		}
+		assertEquals("Back to the initial pawns", new EnglishDraughts(10).board.getWhitePawns(), draughts.board.getWhitePawns());
+	}
+	
+	@Test
+	public void testGenerateMovesMatchesPossibleMoves() {
+		Random random = new Random(3);
+		MoveBuffer codes = new MoveBuffer(1);
+		for (int size = 6; size <= 12; size += 2) {
+			EnglishDraughts draughts = new EnglishDraughts(size);
+			while (draughts.winner() == null) {
+				List<Game.Move> moves = draughts.possibleMoves();
+				draughts.clearMoveCache();
+				assertEquals("Number of moves in " + draughts, moves.size(), draughts.generateMoves(codes));
+				for (int i = 0; i < moves.size(); ++i) {
+					assertEquals("Move " + i + " in " + draughts, moves.get(i), draughts.decodeMove(codes.get(i)));
+				}
+				draughts.playUnchecked(codes.get(random.nextInt(codes.size())));
+			}
+		}
+	}
+	
+	@Test
+	public void testHashKeyTranspositions() {
+		// Two white moves and a black move, played in both orders of the white moves
+		EnglishDraughts draughts = new EnglishDraughts(8);
+		int nbTranspositions = 0;
+		for (Game.Move first : draughts.possibleMoves()) {
+			for (Game.Move second : draughts.possibleMoves()) {
+				if (first.equals(second))
+					continue;
+				EnglishDraughts a = draughts.clone();
+				a.play(first);
+				Game.Move reply = a.possibleMoves().get(0);
+				a.play(reply);
+				if (!a.possibleMoves().contains(second))
+					continue;
+				a.play(second);
+				EnglishDraughts b = draughts.clone();
+				b.play(second);
+				if (!b.possibleMoves().contains(reply))
+					continue;
+				b.play(reply);
+				if (!b.possibleMoves().contains(first))
+					continue;
+				b.play(first);
+				if (a.sameState(b)) {
+					assertEquals("Key of " + a, a.hashKey(), b.hashKey());
+					nbTranspositions++;
+				}
+				assertNotEquals("Different player to move", draughts.hashKey(), a.hashKey());
+			}
+		}
+		assertTrue("Some transpositions", nbTranspositions > 0);
+		
+		TicTacToe ticTacToe = new TicTacToe();
+		long emptyKey = ticTacToe.hashKey();
+		ticTacToe.playUnchecked(0);
+		ticTacToe.playUnchecked(4);
+		ticTacToe.playUnchecked(8);
+		TicTacToe other = new TicTacToe();
+		other.playUnchecked(8);
+		other.playUnchecked(4);
+		other.playUnchecked(0);
+		assertEquals("Tic-tac-toe transposition", ticTacToe.hashKey(), other.hashKey());
+		other.unplay();
+		other.unplay();
+		other.unplay();
+		assertEquals("Back to the empty board", emptyKey, other.hashKey());
+	}
 }
@@ -0,0 +1,261 @@
+package fr.istic.ia.tp1;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import fr.istic.ia.tp1.Game.PlayerId;
+
+import static org.junit.Assert.*;
+
+public class TestMonteCarloTreeSearch {
+	@Test
+	public void testArenaGrowsByChunks() {
+		NodeArena arena = new NodeArena();
+		int first = arena.allocate(NodeArena.CHUNK_SIZE + 3);
+		assertEquals("First node", 0, first);
+		assertEquals("Two chunks", 2 * NodeArena.CHUNK_SIZE, arena.capacity());
+		int node = NodeArena.CHUNK_SIZE + 1;
+		arena.setCode(node, 42);
+		arena.addStats(node, 2, 1.5f);
+		arena.setChildren(node, 7, 3);
+		assertEquals("Code", 42, arena.code(node));
+		assertEquals("Visits", 2, arena.visits(node));
+		assertEquals("Wins", 1.5, arena.wins(node), 1e-9);
+		assertEquals("Moves", 3, arena.moveCount(node));
+		assertEquals("No child yet", 0, arena.childCount(node));
+		arena.setCode(8, 5);
+		arena.addStats(8, 1, 1);
+		assertEquals("First slot", 7, arena.addChild(node));
+		assertEquals("Second slot", 8, arena.addChild(node));
+		assertEquals("Code kept", 5, arena.code(8));
+		assertEquals("Stats cleared", 0, arena.visits(8));
+		assertEquals("Two children", 2, arena.childCount(node));
+
+		arena.clear();
+		assertEquals("Empty", 0, arena.size());
+		assertEquals("Chunks kept", 2 * NodeArena.CHUNK_SIZE, arena.capacity());
+		arena.allocate(NodeArena.CHUNK_SIZE + 3);
+		assertEquals("Fresh node", 0, arena.visits(node));
+		assertEquals("Fresh node", NodeArena.NOT_EXPANDED, arena.moveCount(node));
+	}
+
+	@Test
+	public void testFindsWinningMove() {
+		// o on 0 and 4, x on 2 and 6: o wins by playing 8
+		TicTacToe game = new TicTacToe();
+		game.playUnchecked(0);
+		game.playUnchecked(2);
+		game.playUnchecked(4);
+		game.playUnchecked(6);
+		String before = game.toString();
+		MonteCarloTreeSearch search = new MonteCarloTreeSearch(game, new SplittableRandom(2));
+		search.evaluateTreeWithTimeLimit(100);
+		assertEquals("Win on the diagonal", game.decodeMove(8), search.getBestMove());
+		assertEquals("Game unchanged", before, game.toString());
+
+		search.reset(new TicTacToe());
+		assertEquals("Only the root", 1, search.tree.size());
+		search.evaluateTreeWithTimeLimit(50);
+		assertEquals("Nine first moves", 9, search.tree.moveCount(MonteCarloTreeSearch.ROOT));
+		assertEquals("All tried", 9, search.tree.childCount(MonteCarloTreeSearch.ROOT));
+	}
+
+	@Test
+	public void testAdvanceKeepsSubtree() {
+		EnglishDraughts game = new EnglishDraughts(8);
+		MonteCarloTreeSearch search = new MonteCarloTreeSearch(game, new SplittableRandom(4));
+		for (int i = 0; i < 5000; ++i)
+			search.evaluateTreeOnce();
+		NodeArena tree = search.tree;
+		int child = tree.firstChild(MonteCarloTreeSearch.ROOT);
+		int reply = tree.firstChild(child);
+		int visits = tree.visits(reply);
+		int size = tree.size();
+		game.playUnchecked(tree.code(child));
+		game.playUnchecked(tree.code(reply));
+
+		assertTrue("State found", search.advanceTo(game));
+		assertEquals("Root statistics kept", visits, search.tree.visits(MonteCarloTreeSearch.ROOT));
+		assertTrue("Siblings dropped", search.tree.size() < size);
+		int childrenVisits = 0;
+		int first = search.tree.firstChild(MonteCarloTreeSearch.ROOT);
+		for (int node = first; node < first + search.tree.childCount(MonteCarloTreeSearch.ROOT); ++node)
+			childrenVisits += search.tree.visits(node);
+		assertEquals("Children kept", visits - 1, childrenVisits);
+		for (int i = 0; i < 1000; ++i)
+			search.evaluateTreeOnce();
+		assertTrue("Search goes on", search.getBestMove() != null);
+
+		assertFalse("Unknown state", search.advanceTo(new EnglishDraughts(10)));
+		assertEquals("Only the root", 1, search.tree.size());
+	}
+
+	@Test
+	public void testPondering() throws InterruptedException {
+		EnglishDraughts game = new EnglishDraughts(8);
+		PlayerMCTS player = new PlayerMCTS(50);
+		player.setPondering(true);
+		Game.Move move = player.play(game);
+		Thread.sleep(100);
+		player.stopPondering();
+		game.play(move);
+		assertTrue("Search from our move", player.search.game.sameState(game));
+		assertTrue("Searched on the opponent's time", player.search.nTotal > 0);
+
+		game.play(game.possibleMoves().get(0));
+		assertNotNull("Next move", player.play(game));
+		player.setPondering(false);
+	}
+
+	@Test
+	public void testPonderingStopsAtGameOver() {
+		// o on 0, 2, 3 and 7, x on 1, 4 and 5: x plays 6 or 8, then o ends the game on the other cell
+		TicTacToe game = new TicTacToe();
+		for (int cell : new int[] { 0, 1, 2, 4, 3, 5, 7 }) {
+			game.playUnchecked(cell);
+		}
+		PlayerMCTS player = new PlayerMCTS(20);
+		player.setPondering(true);
+		game.play(player.play(game));
+		Thread ponderThread = player.ponderThread;
+		assertNotNull("Pondering on the opponent's time", ponderThread);
+		game.play(game.possibleMoves().get(0));
+		assertNotNull("Game over", game.winner());
+		player.gameOver(game);
+		assertFalse("Ponder thread stopped", ponderThread.isAlive());
+		assertNull("No ponder thread", player.ponderThread);
+	}
+
+	@Test
+	public void testTimeBankPerGame() {
+		PlayerMCTS player = new PlayerMCTS(50);
+		player.setExtraTimePerGame(30);
+		long extraNanos = 30_000_000L;
+		// A forced move saves most of the time allowed, but the bank stays within the extra time
+		TicTacToe game = new TicTacToe();
+		for (int pos : new int[] { 0, 1, 2, 4, 3, 5, 7, 6 })
+			game.playUnchecked(pos);
+		assertEquals("Forced move", game.decodeMove(8), player.play(game));
+		assertTrue("Bank capped", player.timeBankNanos <= extraNanos);
+
+		player.timeBankNanos = 0;
+		player.gameOver(game);
+		assertEquals("Bank refilled for the next game", extraNanos, player.timeBankNanos);
+	}
+
+	@Test
+	public void testNodeBudget() {
+		MonteCarloTreeSearch search = new MonteCarloTreeSearch(new EnglishDraughts(8), new SplittableRandom(5));
+		search.setNodeBudget(2000);
+		for (int i = 0; i < 20000; ++i) {
+			search.evaluateTreeOnce();
+			assertTrue("Within the budget", search.nbNodes() <= 2000 + 64);
+		}
+		assertTrue("Pruned", search.nbEvictions() > 0);
+		NodeArena tree = search.tree;
+		assertEquals("Root statistics kept", 20000, tree.visits(MonteCarloTreeSearch.ROOT));
+		int childrenVisits = 0;
+		int first = tree.firstChild(MonteCarloTreeSearch.ROOT);
+		for (int node = first; node < first + tree.childCount(MonteCarloTreeSearch.ROOT); ++node)
+			childrenVisits += tree.visits(node);
+		assertEquals("Children statistics kept", 20000, childrenVisits);
+	}
+
+	@Test
+	public void testForcedMove() {
+		// Only 8 is left
+		TicTacToe game = new TicTacToe();
+		for (int pos : new int[] { 0, 1, 2, 4, 3, 5, 7, 6 })
+			game.playUnchecked(pos);
+		long startTime = System.nanoTime();
+		MonteCarloTreeSearch search = new MonteCarloTreeSearch(game, new SplittableRandom(6));
+		search.evaluateTreeWithTimeLimit(10000);
+		assertEquals("Forced move", game.decodeMove(8), search.getBestMove());
+		ParallelMonteCarloTreeSearch parallelSearch = new ParallelMonteCarloTreeSearch(game, 2, new SplittableRandom(6));
+		parallelSearch.evaluateTreeWithTimeLimit(10000);
+		assertEquals("Forced move", game.decodeMove(8), parallelSearch.getBestMove());
+		assertTrue("No search", System.nanoTime() - startTime < 5_000_000_000L);
+	}
+
+	@Test
+	public void testSettledAtDeadline() {
+		MonteCarloTreeSearch search = new MonteCarloTreeSearch(new EnglishDraughts(8), new SplittableRandom(7));
+		long startTime = System.nanoTime();
+		for (int i = 0; i < 2000; ++i)
+			search.evaluateTreeOnce();
+		assertFalse("Far from the deadline", search.isSettled(startTime, 0, System.nanoTime() + 3_600_000_000_000L));
+		assertTrue("No time left", search.isSettled(startTime, 0, System.nanoTime()));
+	}
+
+	@Test
+	public void testAbortedPlayout() {
+		EnglishDraughts game = new EnglishDraughts(8);
+		PlayerId winner = MonteCarloTreeSearch.playOutUntil(game, new MoveBuffer(), new SplittableRandom(8), System.nanoTime());
+		assertNull("Aborted", winner);
+		assertTrue("Game unchanged", game.sameState(new EnglishDraughts(8)));
+		MonteCarloTreeSearch.RolloutResults results = MonteCarloTreeSearch.rollOutUntil(game, 3, new MoveBuffer(),
+				new SplittableRandom(8), System.nanoTime());
+		assertEquals("Not counted", 0, results.nbSimulations());
+	}
+
+	@Test
+	public void testLatencyBound() {
+		PlayerMCTS player = new PlayerMCTS(10000);
+		player.setLatencyBound(200);
+		long startTime = System.nanoTime();
+		assertNotNull("Move", player.play(new EnglishDraughts(8)));
+		assertTrue("Within the bound", System.nanoTime() - startTime < 2_000_000_000L);
+		assertTrue("Latency stats", player.latencyStats().startsWith("1 moves"));
+	}
+
+	@Test
+	public void testPlayoutBudgetIsReproducible() {
+		MonteCarloTreeSearch search = new MonteCarloTreeSearch(new EnglishDraughts(8), new SplittableRandom(9));
+		MonteCarloTreeSearch other = new MonteCarloTreeSearch(new EnglishDraughts(8), new SplittableRandom(9));
+		search.evaluateTreePlayouts(3000);
+		other.evaluateTreePlayouts(3000);
+		assertTrue("Within the budget", search.nTotal > 0 && search.nTotal <= 3000);
+		assertEquals("Same search", search.stats(), other.stats());
+
+		int nbPlayouts = search.nTotal;
+		search.evaluateTreeCpuTime(50_000_000L);
+		assertTrue("CPU time search", search.nTotal > nbPlayouts);
+	}
+
+	@Test
+	public void testTranspositions() {
+		MonteCarloTreeSearch graph = new MonteCarloTreeSearch(new TicTacToe(), new SplittableRandom(4));
+		graph.setTranspositionTableSize(1 << 12);
+		MonteCarloTreeSearch tree = new MonteCarloTreeSearch(new TicTacToe(), new SplittableRandom(4));
+		graph.evaluateTreePlayouts(5000);
+		tree.evaluateTreePlayouts(5000);
+		assertTrue("Transpositions found", graph.nbTranspositions() > 0);
+		assertTrue("Less nodes than the tree", graph.nbNodes() < tree.nbNodes());
+		int first = graph.tree.firstChild(MonteCarloTreeSearch.ROOT);
+		int childrenVisits = 0;
+		for (int child = first; child < first + graph.tree.childCount(MonteCarloTreeSearch.ROOT); ++child) {
+			childrenVisits += graph.tree.visits(child);
+		}
+		assertEquals("Each playout visits one root child", graph.tree.visits(MonteCarloTreeSearch.ROOT), childrenVisits);
+
+		// o on 0 and 4, x on 2 and 6: o wins by playing 8
+		TicTacToe game = new TicTacToe();
+		game.playUnchecked(0);
+		game.playUnchecked(2);
+		game.playUnchecked(4);
+		game.playUnchecked(6);
+		graph.reset(game);
+		graph.evaluateTreePlayouts(2000);
+		assertEquals("Win on the diagonal", game.decodeMove(8), graph.getBestMove());
+
+		// Pruning rebuilds the table from the new tree
+		MonteCarloTreeSearch draughts = new MonteCarloTreeSearch(new EnglishDraughts(6), new SplittableRandom(5));
+		draughts.setNodeBudget(2000);
+		draughts.setTranspositionTableSize(256);
+		draughts.evaluateTreePlayouts(3000);
+		assertTrue("Pruned", draughts.nbEvictions() > 0);
+		assertTrue("Table bounded", draughts.transpositions.size() <= draughts.transpositions.capacity());
+		assertNotNull("Best move", draughts.getBestMove());
+	}
+}
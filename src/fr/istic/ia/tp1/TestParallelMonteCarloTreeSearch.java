@@ -0,0 +1,122 @@
+package fr.istic.ia.tp1;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+import fr.istic.ia.tp1.Game.PlayerId;
+
+import static org.junit.Assert.*;
+
+public class TestParallelMonteCarloTreeSearch {
+	@Test
+	public void testStatsAreConsistent() {
+		ParallelMonteCarloTreeSearch search = new ParallelMonteCarloTreeSearch(new EnglishDraughts(8), 4, new SplittableRandom(1));
+		search.evaluateTreeWithTimeLimit(200);
+		long childrenVisits = 0;
+		for (ParallelMonteCarloTreeSearch.Node child : search.root.children) {
+			assertTrue("Wins within visits", child.wins() <= child.visits());
+			childrenVisits += child.visits();
+		}
+		assertEquals("Each step visits one root child", search.root.visits(), childrenVisits);
+	}
+
+	@Test
+	public void testFindsWinningMove() {
+		// o on 0 and 4, x on 2 and 6: o wins by playing 8
+		TicTacToe game = new TicTacToe();
+		game.playUnchecked(0);
+		game.playUnchecked(2);
+		game.playUnchecked(4);
+		game.playUnchecked(6);
+		ParallelMonteCarloTreeSearch search = new ParallelMonteCarloTreeSearch(game, 3, new SplittableRandom(2));
+		search.evaluateTreeWithTimeLimit(200);
+		assertEquals("Win on the diagonal", game.decodeMove(8), search.getBestMove());
+	}
+
+	@Test
+	public void testRolloutBatch() {
+		EnglishDraughts leaf = new EnglishDraughts(8);
+		String before = leaf.toString();
+		MonteCarloTreeSearch.RolloutResults results = new RolloutExecutor(7).rollOut(leaf, new SplittableRandom(3));
+		assertEquals("Number of playouts", 7, results.nbSimulations());
+		assertEquals("One result per playout", 7.0, results.nbWins(PlayerId.ONE) + results.nbWins(PlayerId.TWO), 1e-9);
+		assertEquals("Leaf unchanged", before, leaf.toString());
+	}
+
+	@Test
+	public void testSharedTableConcurrentUpdates() throws InterruptedException {
+		SharedTranspositionTable table = new SharedTranspositionTable(1);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; ++i) {
+					table.addResults(i % 8, 1, 0.5);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (long key = 0; key < 8; ++key) {
+			long entry = table.probe(key);
+			assertEquals("No lost visit", 5000, SharedTranspositionTable.visits(entry));
+			assertEquals("No lost win", 2500.0, SharedTranspositionTable.wins(entry), 1e-9);
+		}
+		assertEquals("Missing key", 0, table.probe(8));
+	}
+
+	@Test
+	public void testSharedTableReplacement() {
+		// A single bucket of 4 entries
+		SharedTranspositionTable table = new SharedTranspositionTable(0);
+		assertEquals("One bucket", 4, table.capacity());
+		long step = 1L << 48;
+		for (int depth = 1; depth <= 4; ++depth) {
+			table.store(depth * step, depth, SharedTranspositionTable.BOUND_EXACT, -depth);
+		}
+		table.store(5 * step, 5, SharedTranspositionTable.BOUND_LOWER, 5);
+		assertEquals("Lowest depth replaced", 0, table.probe(step));
+		long entry = table.probe(2 * step);
+		assertEquals("Score", -2, SharedTranspositionTable.score(entry));
+		assertEquals("Depth", 2, SharedTranspositionTable.depth(entry));
+		assertEquals("Bound", SharedTranspositionTable.BOUND_EXACT, SharedTranspositionTable.bound(entry));
+		table.store(2 * step, 1, SharedTranspositionTable.BOUND_UPPER, 0);
+		assertEquals("Deeper entry kept", 2, SharedTranspositionTable.depth(table.probe(2 * step)));
+
+		// The entries of the previous search are replaced first, even deeper ones
+		table.newSearch();
+		table.addResults(6 * step, 3, 1);
+		assertEquals("Visits", 3, SharedTranspositionTable.visits(table.probe(6 * step)));
+		assertEquals("Lowest depth of the previous search replaced", 0, table.probe(2 * step));
+		assertTrue("Deeper entries kept", table.probe(3 * step) != 0 && table.probe(5 * step) != 0);
+	}
+
+	@Test
+	public void testSearchesShareTable() throws InterruptedException {
+		// o on 0 and 4, x on 2 and 6: o wins by playing 8
+		TicTacToe game = new TicTacToe();
+		game.playUnchecked(0);
+		game.playUnchecked(2);
+		game.playUnchecked(4);
+		game.playUnchecked(6);
+		SharedTranspositionTable table = new SharedTranspositionTable(1);
+		MonteCarloTreeSearch first = new MonteCarloTreeSearch(game, new SplittableRandom(6));
+		MonteCarloTreeSearch second = new MonteCarloTreeSearch(game, new SplittableRandom(7));
+		first.setSharedTable(table);
+		second.setSharedTable(table);
+		Thread thread = new Thread(() -> second.evaluateTreePlayouts(2000));
+		thread.start();
+		first.evaluateTreePlayouts(2000);
+		thread.join();
+		long entry = table.probe(SharedTranspositionTable.moveKey(game.hashKey(), 8));
+		int winningChild = first.tree.firstChild(MonteCarloTreeSearch.ROOT);
+		while (first.tree.code(winningChild) != 8) {
+			winningChild++;
+		}
+		assertTrue("Results of both searches", SharedTranspositionTable.visits(entry) > first.tree.visits(winningChild));
+		first.mergeRootStats(second);
+		assertEquals("Win on the diagonal", game.decodeMove(8), first.getBestMove());
+	}
+}
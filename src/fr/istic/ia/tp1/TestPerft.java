@@ -0,0 +1,40 @@
+package fr.istic.ia.tp1;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestPerft {
+	/** Published perft counts of the 8x8 English draughts initial position, from depth 1 */
+	static final long[] DRAUGHTS_8X8 = { 7, 49, 302, 1469, 7361, 36768, 179740, 845931 };
+
+	@Test
+	public void testTicTacToe() {
+		assertEquals("Depth 5", 15120, Perft.perft(new TicTacToe(), 5));
+		assertEquals("Depth 6, without the games won at depth 5", 54720, Perft.perft(new TicTacToe(), 6));
+		assertEquals("Depth 9", 127872, Perft.perft(new TicTacToe(), 9));
+	}
+
+	@Test
+	public void testDraughtsInitialPosition() {
+		for (int depth = 1; depth <= DRAUGHTS_8X8.length; ++depth) {
+			assertEquals("Depth " + depth, DRAUGHTS_8X8[depth - 1], Perft.perft(new EnglishDraughts(8), depth));
+		}
+	}
+
+	@Test
+	public void testBitboardInitialPosition() {
+		for (int depth = 1; depth <= DRAUGHTS_8X8.length; ++depth) {
+			assertEquals("Depth " + depth, DRAUGHTS_8X8[depth - 1], Perft.perft(new BitboardDraughts(), depth));
+		}
+	}
+
+	@Test
+	public void testParallelSameCounts() {
+		for (int size = 4; size <= 12; size += 2) {
+			EnglishDraughts draughts = new EnglishDraughts(size);
+			assertEquals("Size " + size, Perft.perft(draughts, 6), Perft.parallelPerft(draughts, 6));
+		}
+		assertEquals("Tic-tac-toe", 127872, Perft.parallelPerft(new TicTacToe(), 9));
+	}
+}
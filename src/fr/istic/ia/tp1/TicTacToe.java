@@ -1,6 +1,7 @@
 package fr.istic.ia.tp1;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -10,6 +11,10 @@ public class TicTacToe extends Game {
 
     private PlayerId playerId;
     private char[] board;
+    private int[] history;
+    private int nbMoves;
+    /** The Zobrist key of the marks on the board, see {@link ZobristKeys#MARKS} */
+    private long hashKey;
 
     class Move implements Game.Move {
         int pos;
@@ -18,6 +23,16 @@ public class TicTacToe extends Game {
             this.pos = pos;
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Move && ((Move) obj).pos == pos;
+        }
+
+        @Override
+        public int hashCode() {
+            return pos;
+        }
+
         @Override
         public String toString() {
             return "" + pos;
@@ -27,6 +42,8 @@ public class TicTacToe extends Game {
     public TicTacToe() {
         playerId = PlayerId.ONE;
         board = new char[3*3];
+        history = new int[3*3];
+        nbMoves = 0;
     }
 
     @Override
@@ -41,9 +58,43 @@ public class TicTacToe extends Game {
         return moves;
     }
 
+    /**
+     * Generate the codes of the possible moves: the code of a move is the index of its tile
+     */
+    @Override
+    public int generateMoves(MoveBuffer moves) {
+        moves.clear();
+        for (int i=0; i<board.length; ++i) {
+            if (board[i] == 0) {
+                moves.add(i);
+            }
+        }
+        return moves.size();
+    }
+
+    @Override
+    public Game.Move decodeMove(long code) {
+        return new Move((int) code);
+    }
+
+    @Override
+    public boolean hasAnyLegalMove() {
+        for (int i=0; i<board.length; ++i) {
+            if (board[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void play(Game.Move move) {
-        Move m = (Move) move;
+        playUnchecked(((Move) move).pos);
+    }
+
+    @Override
+    public void playUnchecked(long code) {
+        int pos = (int) code;
         char mark;
         switch (playerId) {
             case ONE:
@@ -55,8 +106,18 @@ public class TicTacToe extends Game {
             default:
                 mark = 0;
         }
-        board[m.pos] = mark;
+        board[pos] = mark;
+        history[nbMoves++] = pos;
+        hashKey ^= ZobristKeys.MARKS[mark == 'o' ? 0 : 1][pos];
+
+        playerId = playerId.other();
+    }
 
+    @Override
+    public void unplay() {
+        int pos = history[--nbMoves];
+        hashKey ^= ZobristKeys.MARKS[board[pos] == 'o' ? 0 : 1][pos];
+        board[pos] = 0;
         playerId = playerId.other();
     }
 
@@ -157,7 +218,21 @@ public class TicTacToe extends Game {
         for (int i=0; i<board.length; ++i) {
             newGame.board[i] = board[i];
         }
+        newGame.hashKey = hashKey;
         return newGame;
     }
 
+    @Override
+    public long hashKey() {
+        return hashKey ^ ZobristKeys.player(playerId);
+    }
+
+    @Override
+    public boolean sameState(Game other) {
+        if (!(other instanceof TicTacToe))
+            return false;
+        TicTacToe t = (TicTacToe) other;
+        return playerId == t.playerId && Arrays.equals(board, t.board);
+    }
+
 }
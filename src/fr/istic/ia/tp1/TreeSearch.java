@@ -0,0 +1,47 @@
+package fr.istic.ia.tp1;
+
+import fr.istic.ia.tp1.Game.Move;
+
+/**
+ * Common interface of the tree search algorithms, so that {@link PlayerMCTS} can use any of them.
+ * A search is created for one game state, evaluated for some time, then asked for its best move.
+ */
+public interface TreeSearch {
+	/**
+	 * Evaluate the tree during at most <code>timeLimitMillis</code> milliseconds, then print some statistics.
+	 * @param timeLimitMillis Computation time limit in milliseconds
+	 */
+	void evaluateTreeWithTimeLimit(int timeLimitMillis);
+
+	/**
+	 * Evaluate the tree until a given time (without printing anything).
+	 * The search returns immediately when there is a single legal move, and may stop earlier once the best move is settled.
+	 * @param deadlineNanos The time when the search stops, given by {@link System#nanoTime()}
+	 */
+	void evaluateTreeUntil(long deadlineNanos);
+
+	/**
+	 * Evaluate the tree for a given number of playouts (without printing anything), whatever the time it takes
+	 * @param nbPlayouts The number of playouts
+	 */
+	void evaluateTreePlayouts(int nbPlayouts);
+
+	/**
+	 * Evaluate the tree until a given CPU time is used by each search thread (without printing anything),
+	 * whatever the load of the machine
+	 * @param cpuTimeNanos The CPU time budget of each thread, in nanoseconds
+	 */
+	void evaluateTreeCpuTime(long cpuTimeNanos);
+
+	/**
+	 * Select the best move to play, given the current tree statistics
+	 * @return The best move to play from the game state of the search
+	 */
+	Move getBestMove();
+
+	/**
+	 * Get a few stats about the tree and the possible moves scores
+	 * @return A string containing the search stats
+	 */
+	String stats();
+}
@@ -0,0 +1,70 @@
+package fr.istic.ia.tp1;
+
+import java.util.SplittableRandom;
+
+import fr.istic.ia.tp1.Game.PlayerId;
+
+/**
+ * Random 64-bit keys for the Zobrist hashing of the game states (see {@link Game#hashKey()}).
+ * The key of a state is the XOR of the keys of its features (a pawn on a tile, the player to move...),
+ * so it is updated in constant time when a feature changes.
+ * The keys are drawn from a fixed seed: they are the same from one run to the next.
+ */
+final class ZobristKeys {
+	/** Largest tile number of a checker board (12x12) */
+	static final int MAX_TILE = 72;
+
+	/** Key of each pawn type, indexed by its {@link CheckerBoard} ID (0 for {@link CheckerBoard#EMPTY}), on each tile */
+	static final long[][] PAWNS = new long[CheckerBoard.BLACK_KING + 1][MAX_TILE + 1];
+
+	/** Key of the second player to move (the first player has no key) */
+	static final long SECOND_PLAYER;
+
+	/** Number of values of the king-move counter per bucket */
+	static final int KING_MOVES_BUCKET_SIZE = 5;
+
+	/** Key of each bucket of the king-move counter (0 for the first bucket) */
+	static final long[] KING_MOVES = new long[25 / KING_MOVES_BUCKET_SIZE + 1];
+
+	/** Key of each mark on each cell of a tic-tac-toe board: [0] for 'o', [1] for 'x' */
+	static final long[][] MARKS = new long[2][9];
+
+	static {
+		SplittableRandom random = new SplittableRandom(0x5DEECE66DL);
+		for (byte pawn : new byte[] { CheckerBoard.WHITE_CHECKER, CheckerBoard.WHITE_KING, CheckerBoard.BLACK_CHECKER, CheckerBoard.BLACK_KING }) {
+			for (int tile = 1; tile <= MAX_TILE; ++tile) {
+				PAWNS[pawn][tile] = random.nextLong();
+			}
+		}
+		SECOND_PLAYER = random.nextLong();
+		for (int bucket = 1; bucket < KING_MOVES.length; ++bucket) {
+			KING_MOVES[bucket] = random.nextLong();
+		}
+		for (long[] cells : MARKS) {
+			for (int cell = 0; cell < cells.length; ++cell) {
+				cells[cell] = random.nextLong();
+			}
+		}
+	}
+
+	private ZobristKeys() {
+	}
+
+	/**
+	 * @param playerId The player to move
+	 * @return The key of the player to move
+	 */
+	static long player(PlayerId playerId) {
+		return (playerId == PlayerId.TWO) ? SECOND_PLAYER : 0;
+	}
+
+	/**
+	 * Get the key of the king-move counter. The counter is hashed by buckets, the states with close counters
+	 * having the same key: it only tells how close the state is to a draw.
+	 * @param nbKingMovesWithoutCapture The number of king moves without capture
+	 * @return The key of the bucket of the counter
+	 */
+	static long kingMoves(int nbKingMovesWithoutCapture) {
+		return KING_MOVES[Math.min(nbKingMovesWithoutCapture / KING_MOVES_BUCKET_SIZE, KING_MOVES.length - 1)];
+	}
+}